@@ -0,0 +1,127 @@
+package benchmark;
+
+import data.QueryableList;
+import java.time.LocalDate;
+import java.util.*;
+import model.CategoryString;
+import model.Money;
+import model.Transaction;
+import model.Transaction.TRANSACTIONFIELD;
+
+/**
+ * Benchmark that runs the QueryableList queries on generated ledgers of
+ * increasing size, once sequentially and once in parallel. The output shows
+ * from which ledger size the parallel path pays off, which is the value to use
+ * for QueryableList.setParallelThreshold.
+ *
+ * Run with: java -cp BoekhoudingApp.jar benchmark.QueryBenchmark
+ *
+ * @author Anaïs Ools
+ */
+public class QueryBenchmark {
+
+    private static final int[] SIZES = {1000, 5000, 10000, 25000, 50000, 100000, 250000, 500000, 1000000};
+    private static final int RUNS = 15;
+
+    private static volatile Object m_sink; // keeps the JIT from removing the work
+
+    public static void main(String[] args) {
+        System.out.println("Available processors: " + Runtime.getRuntime().availableProcessors());
+        System.out.println(String.format("%10s %-22s %12s %12s %8s", "size", "query", "seq (ms)", "par (ms)", "speedup"));
+        LinkedHashMap<String, Integer> crossover = new LinkedHashMap();
+        for (int size : SIZES) {
+            QueryableList list = new QueryableList(generate(size, new Random(42)));
+            for (Map.Entry<String, Runnable> query : queries(list).entrySet()) {
+                double sequential = measure(query.getValue(), Integer.MAX_VALUE);
+                double parallel = measure(query.getValue(), 0);
+                double speedup = sequential / parallel;
+                System.out.println(String.format("%10d %-22s %12.3f %12.3f %8.2f", size, query.getKey(), sequential, parallel, speedup));
+                if (speedup <= 1.0) {
+                    crossover.put(query.getKey(), null); // not faster (yet)
+                } else if (crossover.get(query.getKey()) == null) {
+                    crossover.put(query.getKey(), size);
+                }
+            }
+        }
+        System.out.println();
+        System.out.println("Size from which the parallel path stays faster:");
+        for (Map.Entry<String, Integer> e : crossover.entrySet()) {
+            System.out.println(String.format("  %-22s %s", e.getKey(), e.getValue() == null ? "never" : e.getValue()));
+        }
+    }
+
+    /**
+     * Get the queries to measure, by name. Selections by year or flag are
+     * left out: they use the indexes of the list, not the parallel threshold.
+     *
+     * @param list
+     * @return
+     */
+    private static LinkedHashMap<String, Runnable> queries(QueryableList list) {
+        LinkedHashMap<String, Runnable> queries = new LinkedHashMap();
+        queries.put("getTotalPrice", () -> m_sink = list.getTotalPrice());
+        queries.put("groupPriceByCategory", () -> m_sink = list.groupPriceByCategory());
+        queries.put("getDistinctTransactors", () -> m_sink = list.getDistinctTransactors());
+        return queries;
+    }
+
+    /**
+     * Measure the median running time of a query.
+     *
+     * @param query
+     * @param threshold the parallel threshold to use
+     * @return the median time in milliseconds
+     */
+    private static double measure(Runnable query, int threshold) {
+        int previous = QueryableList.getParallelThreshold();
+        QueryableList.setParallelThreshold(threshold);
+        try {
+            for (int i = 0; i < RUNS; i++) { // warm up
+                query.run();
+            }
+            double[] times = new double[RUNS];
+            for (int i = 0; i < RUNS; i++) {
+                long start = System.nanoTime();
+                query.run();
+                times[i] = (System.nanoTime() - start) / 1e6;
+            }
+            Arrays.sort(times);
+            return times[RUNS / 2];
+        } finally {
+            QueryableList.setParallelThreshold(previous);
+        }
+    }
+
+    /**
+     * Generate a ledger with random transactions spread over ten years.
+     *
+     * @param size
+     * @param random
+     * @return
+     */
+    private static ArrayList<Transaction> generate(int size, Random random) {
+        String[] categories = {"Food", "Rent", "Salary", "Travel", "Gifts", "Health", "Hobby", "Taxes"};
+        CategoryString[] transactors = new CategoryString[500];
+        for (int i = 0; i < transactors.length; i++) {
+            transactors[i] = new CategoryString("Shop", "Transactor " + i);
+        }
+        CategoryString[] paymentMethods = {new CategoryString("Bank", "Card"), new CategoryString("Cash", "Wallet")};
+        LocalDate start = LocalDate.now().minusYears(10);
+
+        ArrayList<Transaction> list = new ArrayList(size);
+        for (int i = 0; i < size; i++) {
+            Transaction t = new Transaction(i);
+            LocalDate date = start.plusDays(random.nextInt(3650));
+            t.set(TRANSACTIONFIELD.DESCRIPTION, "Transaction " + i);
+            t.set(TRANSACTIONFIELD.PRICE, Money.fromUnits((random.nextInt(200000) - 150000) * 100L));
+            t.set(TRANSACTIONFIELD.CATEGORY, categories[random.nextInt(categories.length)]);
+            t.set(TRANSACTIONFIELD.TRANSACTOR, transactors[random.nextInt(transactors.length)]);
+            t.set(TRANSACTIONFIELD.DATE_ADDED, date);
+            t.set(TRANSACTIONFIELD.DATE_PAID, date.plusDays(random.nextInt(5)));
+            t.set(TRANSACTIONFIELD.PAYMENT_METHOD, paymentMethods[random.nextInt(paymentMethods.length)]);
+            t.set(TRANSACTIONFIELD.HIDDEN, random.nextInt(50) == 0);
+            list.add(t);
+        }
+        return list;
+    }
+}
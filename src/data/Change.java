@@ -0,0 +1,54 @@
+package data;
+
+import model.Transaction;
+import model.Transaction.TRANSACTIONFIELD;
+
+/**
+ * Describes a change in a QueryableList. A QueryableList passes an object of
+ * this class to its observers, so they can update themselves incrementally
+ * instead of recalculating everything.
+ *
+ * @author Anaïs Ools
+ */
+public class Change {
+
+    public enum TYPE {
+
+        ADDED, DELETED, UPDATED
+    };
+
+    // Members & constructors --------------------------------------------------
+    private final TYPE m_type;
+    private final Transaction m_transaction;
+    private final TRANSACTIONFIELD m_field;
+
+    public Change(TYPE type, Transaction transaction, TRANSACTIONFIELD field) {
+        m_type = type;
+        m_transaction = transaction;
+        m_field = field;
+    }
+
+    // Public functions --------------------------------------------------------
+    public TYPE getType() {
+        return m_type;
+    }
+
+    public Transaction getTransaction() {
+        return m_transaction;
+    }
+
+    /**
+     * Get the field that was changed.
+     *
+     * @return the field, or null if the type is not UPDATED or the field is
+     * unknown
+     */
+    public TRANSACTIONFIELD getField() {
+        return m_field;
+    }
+
+    @Override
+    public String toString() {
+        return m_type + " " + m_transaction.getID() + (m_field == null ? "" : " " + m_field);
+    }
+}
@@ -0,0 +1,149 @@
+package data;
+
+import java.util.*;
+import model.Transaction;
+import model.Transaction.TRANSACTIONFIELD;
+
+/**
+ * A group of Change objects that happened shortly after each other, merged per
+ * transaction. Data collects the changes of its list in a ChangeSet and passes
+ * it to its observers at once, so editing the fields of one transaction leads
+ * to one update instead of one per field.
+ *
+ * Merging keeps what matters for the observers: a transaction that is added
+ * and then updated counts as added, a transaction that is added and then
+ * deleted is left out, and the updated fields of a transaction are combined.
+ *
+ * @author Anaïs Ools
+ */
+public class ChangeSet {
+
+    // Members & constructors --------------------------------------------------
+    private final LinkedHashMap<Transaction, Entry> m_entries;
+
+    public ChangeSet() {
+        m_entries = new LinkedHashMap();
+    }
+
+    // Public functions --------------------------------------------------------
+    /**
+     * Merge a change into the set.
+     *
+     * @param change
+     */
+    public void add(Change change) {
+        Transaction t = change.getTransaction();
+        Entry e = m_entries.get(t);
+        if (e == null) {
+            m_entries.put(t, new Entry(change));
+            return;
+        }
+        switch (change.getType()) {
+            case ADDED:
+                e.m_type = e.m_type == Change.TYPE.DELETED ? Change.TYPE.UPDATED : Change.TYPE.ADDED;
+                e.m_allFields = true;
+                break;
+            case DELETED:
+                if (e.m_type == Change.TYPE.ADDED) {
+                    m_entries.remove(t); // never seen by the observers
+                } else {
+                    e.m_type = Change.TYPE.DELETED;
+                }
+                break;
+            case UPDATED:
+                e.addField(change.getField());
+                break;
+        }
+    }
+
+    public boolean isEmpty() {
+        return m_entries.isEmpty();
+    }
+
+    /**
+     * Get the number of transactions that changed.
+     *
+     * @return
+     */
+    public int size() {
+        return m_entries.size();
+    }
+
+    /**
+     * Get one Change per transaction, in the order the transactions first
+     * changed. The field of an update is null if several fields changed.
+     *
+     * @return
+     */
+    public ArrayList<Change> getChanges() {
+        ArrayList<Change> changes = new ArrayList(m_entries.size());
+        for (Map.Entry<Transaction, Entry> e : m_entries.entrySet()) {
+            Entry entry = e.getValue();
+            TRANSACTIONFIELD field = null;
+            if (entry.m_type == Change.TYPE.UPDATED && !entry.m_allFields && entry.m_fields.size() == 1) {
+                field = entry.m_fields.iterator().next();
+            }
+            changes.add(new Change(entry.m_type, e.getKey(), field));
+        }
+        return changes;
+    }
+
+    public Set<Transaction> getTransactions() {
+        return Collections.unmodifiableSet(m_entries.keySet());
+    }
+
+    /**
+     * Check if a field may have changed for any of the transactions. Added and
+     * deleted transactions, and updates of an unknown field, count for every
+     * field.
+     *
+     * @param field
+     * @return
+     */
+    public boolean affects(TRANSACTIONFIELD field) {
+        for (Entry e : m_entries.values()) {
+            if (e.m_type != Change.TYPE.UPDATED || e.m_allFields || e.m_fields.contains(field)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        for (Change c : getChanges()) {
+            if (sb.length() > 0) {
+                sb.append(", ");
+            }
+            sb.append(c);
+        }
+        return sb.toString();
+    }
+
+    // Private classes ---------------------------------------------------------
+    /**
+     * The merged changes of one transaction.
+     */
+    private static class Entry {
+
+        private Change.TYPE m_type;
+        private final EnumSet<TRANSACTIONFIELD> m_fields;
+        private boolean m_allFields;
+
+        private Entry(Change change) {
+            m_type = change.getType();
+            m_fields = EnumSet.noneOf(TRANSACTIONFIELD.class);
+            m_allFields = m_type != Change.TYPE.UPDATED;
+            addField(change.getField());
+        }
+
+        private void addField(TRANSACTIONFIELD field) {
+            if (field == null) {
+                m_allFields = true;
+            } else {
+                m_fields.add(field);
+            }
+        }
+    }
+}
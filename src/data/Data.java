@@ -1,7 +1,12 @@
 package data;
 
 import java.util.*;
+import javax.swing.SwingUtilities;
+import javax.swing.Timer;
+import model.EpochDay;
 import model.Settings;
+import model.Transaction;
+import model.Transaction.TRANSACTIONFIELD;
 
 /**
  * Singleton class: only one instance exists. This class loads the data, using
@@ -10,7 +15,12 @@ import model.Settings;
  *
  * This class is observable. Classes who use the data somewhere should declare
  * themselves observers to this class. They then get notified when something
- * changes.
+ * changes. Changes of the list are not passed on one by one: they are
+ * collected in a ChangeSet, which is dispatched on the event thread at most
+ * once per event-loop cycle, or once per dispatch interval if one is set.
+ *
+ * Views can register themselves with a Dependency that tells which part of the
+ * data they show. They only get the ChangeSets that concern them.
  *
  * This class is an observer for its own QueryableList.
  *
@@ -18,11 +28,29 @@ import model.Settings;
  */
 public class Data extends Observable implements Observer {
 
+    /**
+     * Events that are passed to the observers, next to the Change objects of
+     * the list of transactions.
+     */
+    public enum EVENT {
+
+        SAVED, RELOADED
+    };
+
     // Members -----------------------------------------------------------------
+    private static final int QUERY_CACHE_SIZE = 64;
+
     private QueryableList m_transactions;
+    private SearchIndex m_searchIndex;
+    private LoansLedger m_loansLedger;
+    private final EnumMap<TRANSACTIONFIELD, RangeSums> m_rangeSums = new EnumMap(TRANSACTIONFIELD.class);
+    private final QueryCache m_queryCache = new QueryCache(QUERY_CACHE_SIZE);
     private boolean m_loadingDataSucceeded;
     private boolean m_dataHasChanged;
     private boolean m_saving;
+    private ChangeSet m_pendingChanges; // null if no dispatch is scheduled
+    private int m_dispatchInterval; // in milliseconds, 0 for the next event-loop cycle
+    private final LinkedHashMap<Observer, Dependency> m_dependencies = new LinkedHashMap();
 
     // Private functions -------------------------------------------------------
     /**
@@ -46,15 +74,98 @@ public class Data extends Observable implements Observer {
         } else {
             m_transactions = new QueryableList(xfh.getTransactions());
             m_transactions.addAsObserver(this);
+            m_searchIndex = null;
+            m_loansLedger = null;
+            synchronized (m_rangeSums) {
+                m_rangeSums.clear();
+            }
+            getRangeSums(TRANSACTIONFIELD.DATE_ADDED); // start building before the first view needs them
+            getRangeSums(TRANSACTIONFIELD.DATE_PAID);
+            m_queryCache.invalidateAll();
+            m_pendingChanges = null; // changes of the old list
+            for (Dependency d : m_dependencies.values()) {
+                d.reset(m_transactions);
+            }
+
         }
     }
 
     /**
      * Tell observers that the data has changed.
+     *
+     * @param arg a ChangeSet or EVENT describing what happened
      */
-    private void notifyObserversOfChange() {
+    private void notifyObserversOfChange(Object arg) {
         this.setChanged();
-        this.notifyObservers();
+        this.notifyObservers(arg);
+        ArrayList<Map.Entry<Observer, Dependency>> dependents;
+        synchronized (m_dependencies) {
+            dependents = new ArrayList(m_dependencies.entrySet());
+        }
+        for (Map.Entry<Observer, Dependency> e : dependents) {
+            if (!(arg instanceof ChangeSet) || e.getValue().update((ChangeSet) arg)) {
+                e.getKey().update(this, arg);
+            }
+        }
+    }
+
+    /**
+     * Mark the cached query results of the years of a changed transaction as
+     * outdated.
+     *
+     * @param change
+     */
+    private void invalidateQueries(Change change) {
+        TRANSACTIONFIELD field = change.getField();
+        if (change.getType() == Change.TYPE.UPDATED && (field == null
+                || field == TRANSACTIONFIELD.DATE_ADDED || field == TRANSACTIONFIELD.DATE_PAID)) {
+            m_queryCache.invalidateAll(); // the year it had before is unknown
+            return;
+        }
+        Transaction t = change.getTransaction();
+        boolean dated = false;
+        for (TRANSACTIONFIELD dateField : new TRANSACTIONFIELD[]{TRANSACTIONFIELD.DATE_ADDED, TRANSACTIONFIELD.DATE_PAID}) {
+            int day = t.getEpochDay(dateField);
+            if (day != EpochDay.NONE) {
+                m_queryCache.invalidate(EpochDay.year(day));
+                dated = true;
+            }
+        }
+        if (!dated) {
+            m_queryCache.invalidate(QueryCache.ALL); // it is only in the results over all years
+        }
+    }
+
+    /**
+     * Schedule the pending changes to be dispatched on the event thread.
+     */
+    private void scheduleDispatch() {
+        if (m_dispatchInterval <= 0) {
+            SwingUtilities.invokeLater(() -> dispatchChanges());
+        } else {
+            Timer timer = new Timer(m_dispatchInterval, ae -> dispatchChanges());
+            timer.setRepeats(false);
+            timer.start();
+        }
+    }
+
+    /**
+     * Pass the pending changes to the observers in one ChangeSet, and save the
+     * data once if auto save is on.
+     */
+    private void dispatchChanges() {
+        ChangeSet changes;
+        synchronized (this) {
+            changes = m_pendingChanges;
+            m_pendingChanges = null;
+        }
+        if (changes == null || changes.isEmpty()) {
+            return;
+        }
+        notifyObserversOfChange(changes);
+        if (Settings.GetInstance().getAutoSave()) {
+            saveData();
+        }
     }
 
     // Public functions --------------------------------------------------------
@@ -66,6 +177,66 @@ public class Data extends Observable implements Observer {
         return m_transactions;
     }
 
+    /**
+     * Get the full-text index over the transactions. The index is built the
+     * first time it is needed.
+     *
+     * @return
+     */
+    public SearchIndex getSearchIndex() {
+        if (m_searchIndex == null) {
+            m_searchIndex = new SearchIndex(m_transactions);
+        }
+        return m_searchIndex;
+    }
+
+    /**
+     * Get the loans per payback transactor. The ledger is built the first time
+     * it is needed, and then kept up to date.
+     *
+     * @return
+     */
+    public LoansLedger getLoansLedger() {
+        if (m_loansLedger == null) {
+            m_loansLedger = new LoansLedger(m_transactions);
+        }
+        return m_loansLedger;
+    }
+
+    /**
+     * Get the sums of the prices over ranges of a date field. The sums are
+     * built on a background thread when the data is loaded, and then kept up
+     * to date. They may not be built yet: see RangeSums.isBuilt. Must be
+     * called on the event thread.
+     *
+     * @param field DATE_ADDED or DATE_PAID
+     * @return
+     */
+    public RangeSums getRangeSums(TRANSACTIONFIELD field) {
+        synchronized (m_rangeSums) {
+            RangeSums sums = m_rangeSums.get(field);
+            if (sums == null) {
+                RangeSums created = new RangeSums(field, m_transactions);
+                Thread t = new Thread(() -> created.build(), "Range sums");
+                t.setDaemon(true);
+                t.start();
+                m_rangeSums.put(field, created);
+                sums = created;
+            }
+            return sums;
+        }
+    }
+
+    /**
+     * Get the cache for query results, partitioned by year. Data marks the
+     * results outdated when transactions change.
+     *
+     * @return
+     */
+    public QueryCache getQueryCache() {
+        return m_queryCache;
+    }
+
     /**
      * Add an object to the list of observers to be notified when something in
      * the data changes.
@@ -76,21 +247,57 @@ public class Data extends Observable implements Observer {
         this.addObserver(o);
     }
 
+    /**
+     * Add an object to be notified only of the changes that concern the part
+     * of the data it depends on. Events are always passed on. Calling this
+     * again for the same object replaces its dependency, e.g. when a view
+     * shows another year.
+     *
+     * @param o
+     * @param dependency
+     */
+    public void addAsObserver(Observer o, Dependency dependency) {
+        if (m_transactions != null) {
+            dependency.reset(m_transactions);
+        }
+        synchronized (m_dependencies) {
+            m_dependencies.put(o, dependency);
+        }
+    }
+
+    /**
+     * Set how long changes are collected before they are passed on to the
+     * observers, e.g. one frame.
+     *
+     * @param milliseconds the interval, or 0 to pass them on in the next
+     * event-loop cycle
+     */
+    public void setDispatchInterval(int milliseconds) {
+        m_dispatchInterval = Math.max(0, milliseconds);
+    }
+
     /**
      * This function is executed when the QueryableList member changes its data.
+     * The Change is added to the pending ChangeSet, which is passed on to the
+     * observers later.
      *
      * @param o
-     * @param o1
+     * @param o1 the Change
      */
     @Override
     public void update(Observable o, Object o1) {
+        if (o != m_transactions || !(o1 instanceof Change)) {
+            return; // a list that was replaced by reloading
+        }
         m_dataHasChanged = true;
-        if (Settings.GetInstance().getAutoSave()) {
-            saveData();
-        } else {
-            notifyObserversOfChange();
+        invalidateQueries((Change) o1);
+        synchronized (this) {
+            if (m_pendingChanges == null) {
+                m_pendingChanges = new ChangeSet();
+                scheduleDispatch();
+            }
+            m_pendingChanges.add((Change) o1);
         }
-
     }
 
     /**
@@ -103,9 +310,11 @@ public class Data extends Observable implements Observer {
     }
 
     /**
-     * Saves the data to the XML file.
+     * Saves the data to the XML file. The transactions are saved in order of
+     * date paid, as kept by the sorted view of the list.
      */
     public void saveData() {
+        ArrayList<Transaction> transactions = m_transactions.getSortedView(TRANSACTIONFIELD.DATE_PAID).toList();
         Runnable r = new Runnable() {
             @Override
             public void run() {
@@ -115,10 +324,10 @@ public class Data extends Observable implements Observer {
                     if (!xfh.success()) {
                         m_dataHasChanged = true;
                     } else {
-                        xfh.saveTransactions(m_transactions.sortByDatePaid().toList());
+                        xfh.saveTransactions(transactions);
                         m_dataHasChanged = false;
                     }
-                    notifyObserversOfChange();
+                    notifyObserversOfChange(EVENT.SAVED);
                     m_saving = false;
                 }
             }
@@ -134,10 +343,10 @@ public class Data extends Observable implements Observer {
             if (!xfh.success()) {
                 m_dataHasChanged = true;
             } else {
-                xfh.saveTransactions(m_transactions.sortByDatePaid().toList());
+                xfh.saveTransactions(m_transactions.getSortedView(TRANSACTIONFIELD.DATE_PAID).toList());
                 m_dataHasChanged = false;
             }
-            notifyObserversOfChange();
+            notifyObserversOfChange(EVENT.SAVED);
             m_saving = false;
         }
     }
@@ -148,7 +357,7 @@ public class Data extends Observable implements Observer {
      */
     public void reloadData() {
         loadData();
-        notifyObserversOfChange();
+        notifyObserversOfChange(EVENT.RELOADED);
     }
 
     // Singleton ---------------------------------------------------------------
@@ -0,0 +1,136 @@
+package data;
+
+import java.util.*;
+import java.util.function.Predicate;
+import model.EpochDay;
+import model.Transaction;
+import model.Transaction.TRANSACTIONFIELD;
+
+/**
+ * Describes the part of the data a view depends on: the transactions it shows
+ * and the fields it reads from them. A view that registers itself at Data with
+ * a Dependency is only notified of changes that concern it.
+ *
+ * The dependency keeps the transactions that currently match, so it also
+ * notices a transaction that leaves the view, e.g. when its date is moved to
+ * another year. A dependency on all transactions keeps none, since every
+ * transaction matches.
+ *
+ * @author Anaïs Ools
+ */
+public class Dependency {
+
+    // Members & constructors --------------------------------------------------
+    private final Predicate<Transaction> m_selection;
+    private final EnumSet<TRANSACTIONFIELD> m_fields;
+    private final HashSet<Transaction> m_members; // null if all transactions match
+
+    /**
+     * Create a dependency.
+     *
+     * @param selection tells whether the view shows a transaction, or null if
+     * it shows all of them
+     * @param fields the fields the view reads, or none if it reads all fields
+     */
+    public Dependency(Predicate<Transaction> selection, TRANSACTIONFIELD... fields) {
+        m_selection = selection;
+        m_fields = fields.length == 0 ? EnumSet.allOf(TRANSACTIONFIELD.class) : EnumSet.copyOf(Arrays.asList(fields));
+        m_members = selection == null ? null : new HashSet();
+    }
+
+    // Package-private functions -----------------------------------------------
+    /**
+     * Find the transactions that match, e.g. when the dependency is registered
+     * or the data is reloaded.
+     *
+     * @param list
+     */
+    void reset(QueryableList list) {
+        if (m_members == null) {
+            return;
+        }
+        m_members.clear();
+        for (Transaction t : list) {
+            if (m_selection.test(t)) {
+                m_members.add(t);
+            }
+        }
+    }
+
+    /**
+     * Check if a set of changes concerns the view, and keep the matching
+     * transactions up to date. A change concerns the view if a transaction
+     * enters or leaves the selection, or if a transaction in the selection
+     * changes a field the view reads.
+     *
+     * @param changes
+     * @return
+     */
+    boolean update(ChangeSet changes) {
+        boolean affected = false;
+        for (Change c : changes.getChanges()) {
+            if (m_members == null) {
+                if (c.getType() != Change.TYPE.UPDATED || c.getField() == null || m_fields.contains(c.getField())) {
+                    return true;
+                }
+                continue;
+            }
+            Transaction t = c.getTransaction();
+            boolean was = m_members.contains(t);
+            boolean is = c.getType() != Change.TYPE.DELETED && m_selection.test(t);
+            if (was != is) {
+                affected = true;
+                if (is) {
+                    m_members.add(t);
+                } else {
+                    m_members.remove(t);
+                }
+            } else if (is && (c.getField() == null || m_fields.contains(c.getField()))) {
+                affected = true;
+            }
+        }
+        return affected;
+    }
+
+    // Public functions --------------------------------------------------------
+    /**
+     * Depend on all transactions.
+     *
+     * @return
+     */
+    public static Dependency all() {
+        return new Dependency(null);
+    }
+
+    /**
+     * Depend on the transactions of a year.
+     *
+     * @param field the date field that decides the year
+     * @param year
+     * @return
+     */
+    public static Dependency year(TRANSACTIONFIELD field, int year) {
+        return new Dependency(t -> {
+            int day = t.getEpochDay(field);
+            return day != EpochDay.NONE && EpochDay.year(day) == year;
+        });
+    }
+
+    /**
+     * Depend on the transactions that are paid back.
+     *
+     * @return
+     */
+    public static Dependency loans() {
+        return new Dependency(t -> t.getFlag(TRANSACTIONFIELD.PAYBACK));
+    }
+
+    /**
+     * Depend on the transactions that are jobs.
+     *
+     * @return
+     */
+    public static Dependency jobs() {
+        return new Dependency(t -> t.getFlag(TRANSACTIONFIELD.JOB));
+    }
+}
@@ -0,0 +1,97 @@
+package data;
+
+import java.util.*;
+import model.Transaction;
+import model.Transaction.TRANSACTIONFIELD;
+
+/**
+ * Index over the boolean fields of the transactions in a QueryableList. For
+ * every flag the index keeps a BitSet with a bit per position in the list, so
+ * selections on flags can be combined with word-wise and, or and and-not
+ * operations instead of scanning the transactions.
+ *
+ * Setting a flag or adding a transaction updates the index in place. Deleting
+ * a transaction shifts the positions, so the list then builds a new index.
+ *
+ * @author Anaïs Ools
+ */
+class FlagIndex {
+
+    // Members & constructors --------------------------------------------------
+    static final TRANSACTIONFIELD[] FLAGS = {
+        TRANSACTIONFIELD.EXCEPTIONAL, TRANSACTIONFIELD.HIDDEN, TRANSACTIONFIELD.JOB, TRANSACTIONFIELD.PAYBACK
+    };
+
+    private final EnumMap<TRANSACTIONFIELD, BitSet> m_flags;
+    private final IdentityHashMap<Transaction, Integer> m_positions;
+
+    FlagIndex(List<Transaction> list) {
+        m_flags = new EnumMap(TRANSACTIONFIELD.class);
+        for (TRANSACTIONFIELD flag : FLAGS) {
+            m_flags.put(flag, new BitSet(list.size()));
+        }
+        m_positions = new IdentityHashMap(list.size() * 2);
+        for (int i = 0; i < list.size(); i++) {
+            add(list.get(i), i);
+        }
+    }
+
+    // Package-private functions -----------------------------------------------
+    static boolean isFlag(TRANSACTIONFIELD field) {
+        return field == TRANSACTIONFIELD.EXCEPTIONAL || field == TRANSACTIONFIELD.HIDDEN
+                || field == TRANSACTIONFIELD.JOB || field == TRANSACTIONFIELD.PAYBACK;
+    }
+
+    /**
+     * Index a transaction at a position.
+     *
+     * @param t
+     * @param position
+     */
+    void add(Transaction t, int position) {
+        m_positions.put(t, position);
+        for (TRANSACTIONFIELD flag : FLAGS) {
+            m_flags.get(flag).set(position, t.getFlag(flag));
+        }
+    }
+
+    /**
+     * Index a transaction again after its fields changed.
+     *
+     * @param t
+     * @param field the changed field, or null if unknown
+     */
+    void update(Transaction t, TRANSACTIONFIELD field) {
+        Integer position = m_positions.get(t);
+        if (position == null) {
+            return;
+        }
+        if (field == null) {
+            add(t, position);
+        } else if (isFlag(field)) {
+            m_flags.get(field).set(position, t.getFlag(field));
+        }
+    }
+
+    /**
+     * Get the position of a transaction in the list.
+     *
+     * @param t
+     * @return the position, or -1 if the transaction is not in the list
+     */
+    int positionOf(Transaction t) {
+        Integer position = m_positions.get(t);
+        return position == null ? -1 : position;
+    }
+
+    /**
+     * Get the positions of the transactions where a flag is set. The BitSet
+     * belongs to the index and must not be changed.
+     *
+     * @param flag
+     * @return
+     */
+    BitSet get(TRANSACTIONFIELD flag) {
+        return m_flags.get(flag);
+    }
+}
@@ -0,0 +1,244 @@
+package data;
+
+import java.util.*;
+import java.util.function.Predicate;
+import model.EpochDay;
+import model.Money;
+import model.Transaction;
+import model.Transaction.TRANSACTIONFIELD;
+
+/**
+ * The prices of a list of transactions summed per group and per period of
+ * time, e.g. per category and per month. Everything is calculated in a single
+ * pass over the transactions: the totals of each group, for tables and pie
+ * charts, and the sums of each period, for charts over time.
+ *
+ * Incoming and outgoing amounts are summed separately, in minor units (see
+ * Money). Transactions without a date are only counted in the totals.
+ *
+ * Create a GroupedSeries with Query.aggregate(list, dateField, period, from,
+ * to), or get the totals of a date range from RangeSums.
+ *
+ * @author Anaïs Ools
+ */
+public class GroupedSeries {
+
+    /**
+     * The length of the periods.
+     */
+    public enum PERIOD {
+
+        DAY, MONTH, YEAR
+    };
+
+    // Members & constructors --------------------------------------------------
+    private final PERIOD m_period;
+    private final int m_from;
+    private final int m_firstPeriod;
+    private final int m_periodCount;
+    private final ArrayList<Object> m_keys;
+    private final HashMap<Object, Sums> m_groups;
+
+    private GroupedSeries(PERIOD period, int from, int to) {
+        m_period = period;
+        m_from = from;
+        m_firstPeriod = periodOf(from);
+        m_periodCount = Math.max(0, periodOf(to) - m_firstPeriod + 1);
+        m_keys = new ArrayList();
+        m_groups = new HashMap();
+    }
+
+    private GroupedSeries() { // totals only
+        m_period = PERIOD.YEAR;
+        m_from = EpochDay.NONE;
+        m_firstPeriod = 0;
+        m_periodCount = 0;
+        m_keys = new ArrayList();
+        m_groups = new HashMap();
+    }
+
+    // Package-private functions -----------------------------------------------
+    /**
+     * Sum the prices of the transactions of a list that match a predicate.
+     *
+     * @param list
+     * @param predicate
+     * @param groupBy the field to group on, or null for a single group with key
+     * null
+     * @param dateField the date that decides the period of a transaction
+     * @param period
+     * @param from the first day of the first period
+     * @param to the last day of the last period
+     * @return
+     */
+    static GroupedSeries aggregate(QueryableList list, Predicate<Transaction> predicate, TRANSACTIONFIELD groupBy,
+            TRANSACTIONFIELD dateField, PERIOD period, int from, int to) {
+        GroupedSeries result = new GroupedSeries(period, from, to);
+        for (Transaction t : list) {
+            if (!predicate.test(t)) {
+                continue;
+            }
+            Object key = groupBy == null ? null : t.get(groupBy);
+            Sums sums = result.m_groups.get(key);
+            if (sums == null) {
+                sums = new Sums(result.m_periodCount);
+                result.m_groups.put(key, sums);
+                result.m_keys.add(key);
+            }
+            long price = ((Money) t.get(TRANSACTIONFIELD.PRICE)).getUnits();
+            int day = t.getEpochDay(dateField);
+            int index = day == EpochDay.NONE ? -1 : result.periodOf(day) - result.m_firstPeriod;
+            sums.add(price, index);
+        }
+        result.sortKeys();
+        return result;
+    }
+
+    /**
+     * Create a series without periods from totals that were summed before.
+     *
+     * @param totals the incoming and outgoing amount of each group
+     * @return
+     */
+    static GroupedSeries ofTotals(Map<Object, long[]> totals) {
+        GroupedSeries result = new GroupedSeries();
+        for (Map.Entry<Object, long[]> e : totals.entrySet()) {
+            Sums sums = new Sums(0);
+            sums.m_income = e.getValue()[0];
+            sums.m_expenses = e.getValue()[1];
+            result.m_groups.put(e.getKey(), sums);
+            result.m_keys.add(e.getKey());
+        }
+        result.sortKeys();
+        return result;
+    }
+
+    // Private functions -------------------------------------------------------
+    private void sortKeys() {
+        Collections.sort(m_keys, (a, b) -> {
+            if (a == null || b == null) {
+                return Boolean.compare(a == null, b == null);
+            }
+            return a.toString().compareTo(b.toString());
+        });
+    }
+
+    /**
+     * Get the number of the period of an epoch day, counted from 1970.
+     *
+     * @param day
+     * @return
+     */
+    private int periodOf(int day) {
+        switch (m_period) {
+            case DAY:
+                return day;
+            case MONTH:
+                return EpochDay.year(day) * 12 + EpochDay.month(day);
+            default:
+                return EpochDay.year(day);
+        }
+    }
+
+    private Sums sums(Object key) {
+        Sums sums = m_groups.get(key);
+        return sums == null ? new Sums(0) : sums;
+    }
+
+    // Public functions --------------------------------------------------------
+    public PERIOD getPeriod() {
+        return m_period;
+    }
+
+    /**
+     * Get the keys of the groups, ordered by their string value. The key null,
+     * used when there is no group field, comes last.
+     *
+     * @return
+     */
+    public List<Object> getKeys() {
+        return Collections.unmodifiableList(m_keys);
+    }
+
+    public Money getIncome(Object key) {
+        return Money.fromUnits(sums(key).m_income);
+    }
+
+    public Money getExpenses(Object key) {
+        return Money.fromUnits(sums(key).m_expenses);
+    }
+
+    public Money getProfit(Object key) {
+        Sums sums = sums(key);
+        return Money.fromUnits(sums.m_income + sums.m_expenses);
+    }
+
+    public int getPeriodCount() {
+        return m_periodCount;
+    }
+
+    /**
+     * Get the first day of a period.
+     *
+     * @param index the index of the period, from 0
+     * @return the epoch day
+     */
+    public int getPeriodStart(int index) {
+        int period = m_firstPeriod + index;
+        switch (m_period) {
+            case DAY:
+                return period;
+            case MONTH:
+                return index == 0 ? m_from : EpochDay.of(period / 12, period % 12 + 1, 1);
+            default:
+                return index == 0 ? m_from : EpochDay.firstDayOfYear(period);
+        }
+    }
+
+    public Money getIncome(Object key, int index) {
+        Sums sums = m_groups.get(key);
+        return sums == null ? Money.ZERO : Money.fromUnits(sums.m_periodIncome[index]);
+    }
+
+    public Money getExpenses(Object key, int index) {
+        Sums sums = m_groups.get(key);
+        return sums == null ? Money.ZERO : Money.fromUnits(sums.m_periodExpenses[index]);
+    }
+
+    public Money getProfit(Object key, int index) {
+        Sums sums = m_groups.get(key);
+        return sums == null ? Money.ZERO : Money.fromUnits(sums.m_periodIncome[index] + sums.m_periodExpenses[index]);
+    }
+
+    // Private classes ---------------------------------------------------------
+    /**
+     * The sums of one group.
+     */
+    private static class Sums {
+
+        private long m_income;
+        private long m_expenses;
+        private final long[] m_periodIncome;
+        private final long[] m_periodExpenses;
+
+        private Sums(int periods) {
+            m_periodIncome = new long[periods];
+            m_periodExpenses = new long[periods];
+        }
+
+        private void add(long price, int index) {
+            boolean inPeriod = index >= 0 && index < m_periodIncome.length;
+            if (price > 0) {
+                m_income += price;
+                if (inPeriod) {
+                    m_periodIncome[index] += price;
+                }
+            } else {
+                m_expenses += price;
+                if (inPeriod) {
+                    m_periodExpenses[index] += price;
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,204 @@
+package data;
+
+import java.util.*;
+import model.CategoryString;
+import model.Money;
+import model.Transaction;
+import model.Transaction.TRANSACTIONFIELD;
+
+/**
+ * The loans of the transactions in a QueryableList, per payback transactor: the
+ * balance that is still to be paid back and the transactions that make it up.
+ * A transaction is a loan when it is marked as payback and has a payback
+ * transactor.
+ *
+ * The ledger observes the list and updates only the accounts of the
+ * transactors a change concerns. Each account has a version that changes
+ * whenever the account does, so views can tell which accounts to redraw. All
+ * functions are thread-safe.
+ *
+ * @author Anaïs Ools
+ */
+public class LoansLedger implements Observer {
+
+    // Members & constructors --------------------------------------------------
+    private static final Comparator<CategoryString> TRANSACTOR_ORDER = (t1, t2) -> {
+        int result = String.valueOf(t1.getValue()).compareTo(String.valueOf(t2.getValue()));
+        return result != 0 ? result : String.valueOf(t1.getCategory()).compareTo(String.valueOf(t2.getCategory()));
+    };
+
+    private final HashMap<CategoryString, Account> m_accounts;
+    private final IdentityHashMap<Transaction, Entry> m_entries;
+    private long m_version;
+
+    public LoansLedger(QueryableList list) {
+        m_accounts = new HashMap();
+        m_entries = new IdentityHashMap();
+        for (Transaction t : list.getLoans()) {
+            add(t);
+        }
+        list.addAsObserver(this);
+    }
+
+    // Private functions -------------------------------------------------------
+    /**
+     * Add a transaction to the account of its payback transactor, if it is a
+     * loan.
+     *
+     * @param t
+     */
+    private void add(Transaction t) {
+        CategoryString transactor = (CategoryString) t.get(TRANSACTIONFIELD.PAYBACK_TRANSACTOR);
+        if (!t.getFlag(TRANSACTIONFIELD.PAYBACK) || transactor == null) {
+            return;
+        }
+        Entry e = new Entry(transactor, getPrice(t).getUnits());
+        m_entries.put(t, e);
+        Account account = m_accounts.get(transactor);
+        if (account == null) {
+            account = new Account();
+            m_accounts.put(transactor, account);
+        }
+        account.m_transactions.add(t);
+        account.m_balance += e.m_price;
+        account.m_version = ++m_version;
+    }
+
+    private void remove(Transaction t) {
+        Entry e = m_entries.remove(t);
+        if (e == null) {
+            return;
+        }
+        Account account = m_accounts.get(e.m_transactor);
+        account.m_transactions.remove(t);
+        account.m_balance -= e.m_price;
+        account.m_version = ++m_version;
+        if (account.m_transactions.isEmpty()) {
+            m_accounts.remove(e.m_transactor);
+        }
+    }
+
+    // Public functions --------------------------------------------------------
+    /**
+     * Get the amount of a loan that counts for the balance. A loan without
+     * payback price counts for its full price, inverted; a payback price of
+     * zero means the price itself counts.
+     *
+     * @param t
+     * @return
+     */
+    public static Money getPrice(Transaction t) {
+        Money price = (Money) t.get(TRANSACTIONFIELD.PAYBACK_PRICE);
+        if (price == null) {
+            return ((Money) t.get(TRANSACTIONFIELD.PRICE)).negate();
+        } else if (price.isZero()) {
+            return (Money) t.get(TRANSACTIONFIELD.PRICE);
+        }
+        return price;
+    }
+
+    /**
+     * Get the transactors that have loans, ordered by name and category.
+     *
+     * @return
+     */
+    public synchronized ArrayList<CategoryString> getTransactors() {
+        ArrayList<CategoryString> result = new ArrayList(m_accounts.keySet());
+        Collections.sort(result, TRANSACTOR_ORDER);
+        return result;
+    }
+
+    /**
+     * Get the balance of the loans of a transactor.
+     *
+     * @param transactor
+     * @return
+     */
+    public synchronized Money getBalance(CategoryString transactor) {
+        Account account = m_accounts.get(transactor);
+        return account == null ? Money.ZERO : Money.fromUnits(account.m_balance);
+    }
+
+    /**
+     * Get the loans of a transactor, in order of date added.
+     *
+     * @param transactor
+     * @return
+     */
+    public synchronized ArrayList<Transaction> getTransactions(CategoryString transactor) {
+        Account account = m_accounts.get(transactor);
+        if (account == null) {
+            return new ArrayList();
+        }
+        return SortedView.sort(new ArrayList(account.m_transactions), TRANSACTIONFIELD.DATE_ADDED);
+    }
+
+    /**
+     * Get the version of the account of a transactor. The version changes
+     * each time a loan of the transactor is added, removed or changed.
+     *
+     * @param transactor
+     * @return the version, or -1 if the transactor has no loans
+     */
+    public synchronized long getVersion(CategoryString transactor) {
+        Account account = m_accounts.get(transactor);
+        return account == null ? -1 : account.m_version;
+    }
+
+    /**
+     * This function is executed when the list changes. A changed transaction
+     * is taken out of its old account and added to its new one.
+     *
+     * @param o
+     * @param o1 the Change
+     */
+    @Override
+    public synchronized void update(Observable o, Object o1) {
+        if (!(o1 instanceof Change)) {
+            return;
+        }
+        Change c = (Change) o1;
+        Transaction t = c.getTransaction();
+        switch (c.getType()) {
+            case ADDED:
+                add(t);
+                break;
+            case DELETED:
+                remove(t);
+                break;
+            case UPDATED:
+                if (m_entries.containsKey(t) || c.getField() == null || c.getField() == TRANSACTIONFIELD.PAYBACK
+                        || c.getField() == TRANSACTIONFIELD.PAYBACK_TRANSACTOR) {
+                    remove(t);
+                    add(t);
+                }
+                break;
+        }
+    }
+
+    // Private classes ---------------------------------------------------------
+    /**
+     * The loans of one transactor.
+     */
+    private static class Account {
+
+        private final LinkedHashSet<Transaction> m_transactions = new LinkedHashSet();
+        private long m_balance;
+        private long m_version;
+    }
+
+    /**
+     * The account and amount a loan was added with, so it can be taken out
+     * again after it changed.
+     */
+    private static class Entry {
+
+        private final CategoryString m_transactor;
+        private final long m_price;
+
+        private Entry(CategoryString transactor, long price) {
+            m_transactor = transactor;
+            m_price = price;
+        }
+    }
+}
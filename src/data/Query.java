@@ -0,0 +1,436 @@
+package data;
+
+import java.time.LocalDate;
+import java.util.*;
+import java.util.function.Predicate;
+import model.CategoryString;
+import model.EpochDay;
+import model.Money;
+import model.Transaction;
+import model.Transaction.TRANSACTIONFIELD;
+
+/**
+ * Builder for queries on a QueryableList. Conditions, grouping, ordering and a
+ * limit are added one by one, after which the query can be executed on a
+ * list:
+ *
+ * <pre>
+ * ArrayList&lt;Query.Group&gt; groups = new Query()
+ *         .between(TRANSACTIONFIELD.DATE_PAID, from, to)
+ *         .is(TRANSACTIONFIELD.EXCEPTIONAL, false)
+ *         .groupBy(TRANSACTIONFIELD.CATEGORY)
+ *         .aggregate(list);
+ * </pre>
+ *
+ * All conditions are compiled into one predicate that reads the primitive
+ * values of the transactions, and the query runs as a single pass over the
+ * list without intermediate lists.
+ *
+ * @author Anaïs Ools
+ */
+public class Query {
+
+    // Members & constructors --------------------------------------------------
+    private final ArrayList<Predicate<Transaction>> m_conditions;
+    private TRANSACTIONFIELD m_groupBy;
+    private TRANSACTIONFIELD m_orderBy;
+    private boolean m_ascending;
+    private int m_limit;
+    private TRANSACTIONFIELD m_rangeField;
+    private int m_rangeFrom;
+    private int m_rangeTo;
+
+    public Query() {
+        m_conditions = new ArrayList();
+        m_ascending = true;
+        m_limit = -1;
+    }
+
+    // Building ----------------------------------------------------------------
+    /**
+     * Only select transactions of which a date field lies between two dates,
+     * both inclusive. A null bound means the range is open on that side.
+     * Transactions without this date are never selected.
+     *
+     * @param field a date field
+     * @param from
+     * @param to
+     * @return this query
+     */
+    public Query between(TRANSACTIONFIELD field, LocalDate from, LocalDate to) {
+        int min = from == null ? Integer.MIN_VALUE + 1 : EpochDay.of(from);
+        int max = to == null ? Integer.MAX_VALUE : EpochDay.of(to);
+        if (m_rangeField == null) { // can be looked up in a sorted view
+            m_rangeField = field;
+            m_rangeFrom = min;
+            m_rangeTo = max;
+        }
+        m_conditions.add(t -> {
+            int day = t.getEpochDay(field);
+            return day >= min && day <= max;
+        });
+        return this;
+    }
+
+    /**
+     * Only select transactions of which an amount field lies between two
+     * amounts, both inclusive. A null bound means the range is open on that
+     * side. Transactions without this amount are never selected.
+     *
+     * @param field PRICE, PAYBACK_PRICE or JOB_WAGE
+     * @param min
+     * @param max
+     * @return this query
+     */
+    public Query between(TRANSACTIONFIELD field, Money min, Money max) {
+        long minUnits = min == null ? Long.MIN_VALUE : min.getUnits();
+        long maxUnits = max == null ? Long.MAX_VALUE : max.getUnits();
+        m_conditions.add(t -> {
+            Money m = (Money) t.get(field);
+            return m != null && m.getUnits() >= minUnits && m.getUnits() <= maxUnits;
+        });
+        return this;
+    }
+
+    /**
+     * Only select transactions of which a field equals a value, e.g. a
+     * category, transactor or payment method.
+     *
+     * @param field
+     * @param value
+     * @return this query
+     */
+    public Query equalTo(TRANSACTIONFIELD field, Object value) {
+        m_conditions.add(t -> Objects.equals(t.get(field), value));
+        return this;
+    }
+
+    /**
+     * Only select transactions of which a flag (EXCEPTIONAL, PAYBACK, JOB or
+     * HIDDEN) has a certain value.
+     *
+     * @param flag
+     * @param value
+     * @return this query
+     */
+    public Query is(TRANSACTIONFIELD flag, boolean value) {
+        m_conditions.add(t -> t.getFlag(flag) == value);
+        return this;
+    }
+
+    /**
+     * Only select transactions that match a custom condition.
+     *
+     * @param condition
+     * @return this query
+     */
+    public Query where(Predicate<Transaction> condition) {
+        m_conditions.add(condition);
+        return this;
+    }
+
+    /**
+     * Group the selected transactions by the value of a field when
+     * aggregating.
+     *
+     * @param field
+     * @return this query
+     */
+    public Query groupBy(TRANSACTIONFIELD field) {
+        m_groupBy = field;
+        return this;
+    }
+
+    /**
+     * Order the result by a field. When aggregating, ordering by the group
+     * field orders by the group, ordering by PRICE orders by the profit of the
+     * group.
+     *
+     * @param field
+     * @param ascending
+     * @return this query
+     */
+    public Query orderBy(TRANSACTIONFIELD field, boolean ascending) {
+        m_orderBy = field;
+        m_ascending = ascending;
+        return this;
+    }
+
+    /**
+     * Return at most a certain number of transactions or groups.
+     *
+     * @param limit
+     * @return this query
+     */
+    public Query limit(int limit) {
+        m_limit = limit;
+        return this;
+    }
+
+    // Executing ---------------------------------------------------------------
+    /**
+     * Compile the conditions into a single predicate.
+     *
+     * @return
+     */
+    public Predicate<Transaction> compile() {
+        Predicate<Transaction>[] conditions = m_conditions.toArray(new Predicate[m_conditions.size()]);
+        switch (conditions.length) {
+            case 0:
+                return t -> true;
+            case 1:
+                return conditions[0];
+            default:
+                return t -> {
+                    for (Predicate<Transaction> p : conditions) {
+                        if (!p.test(t)) {
+                            return false;
+                        }
+                    }
+                    return true;
+                };
+        }
+    }
+
+    /**
+     * Select the transactions of a list that match the query, ordered and
+     * limited as requested.
+     *
+     * @param list
+     * @return
+     */
+    public QueryableList select(QueryableList list) {
+        list = narrow(list);
+        Predicate<Transaction> predicate = compile();
+        ArrayList<Transaction> result;
+        if (m_orderBy == null && m_limit >= 0) { // stop as soon as the limit is reached
+            result = new ArrayList();
+            for (Transaction t : list) {
+                if (result.size() >= m_limit) {
+                    break;
+                }
+                if (predicate.test(t)) {
+                    result.add(t);
+                }
+            }
+            return QueryableList.of(result);
+        }
+        result = list.filter(predicate).toList();
+        if (m_orderBy != null) {
+            Collections.sort(result, transactionComparator(m_orderBy, m_ascending));
+        }
+        if (m_limit >= 0 && result.size() > m_limit) {
+            result = new ArrayList(result.subList(0, m_limit));
+        }
+        return QueryableList.of(result);
+    }
+
+    /**
+     * Sum the prices of the transactions that match the query.
+     *
+     * @param list
+     * @return
+     */
+    public Money total(QueryableList list) {
+        list = narrow(list);
+        Predicate<Transaction> predicate = compile();
+        return Money.fromUnits(list.stream().filter(predicate).mapToLong(t -> ((Money) t.get(TRANSACTIONFIELD.PRICE)).getUnits()).sum());
+    }
+
+    /**
+     * Sum the prices of the transactions that match the query per group. When
+     * no group field is set, all transactions fall in a single group with key
+     * null.
+     *
+     * @param list
+     * @return the groups, ordered and limited as requested
+     */
+    public ArrayList<Group> aggregate(QueryableList list) {
+        list = narrow(list);
+        Predicate<Transaction> predicate = compile();
+        TRANSACTIONFIELD groupBy = m_groupBy;
+        HashMap<Object, Group> groups = list.stream().collect(HashMap::new, (HashMap<Object, Group> map, Transaction t) -> {
+            if (predicate.test(t)) {
+                Object key = groupBy == null ? null : t.get(groupBy);
+                Group g = map.get(key);
+                if (g == null) {
+                    g = new Group(key);
+                    map.put(key, g);
+                }
+                g.add(((Money) t.get(TRANSACTIONFIELD.PRICE)).getUnits());
+            }
+        }, (HashMap<Object, Group> map, HashMap<Object, Group> partial) -> {
+            for (Group p : partial.values()) {
+                Group g = map.get(p.m_key);
+                if (g == null) {
+                    map.put(p.m_key, p);
+                } else {
+                    g.merge(p);
+                }
+            }
+        });
+
+        ArrayList<Group> result = new ArrayList(groups.values());
+        int sign = m_ascending ? 1 : -1;
+        if (m_orderBy == TRANSACTIONFIELD.PRICE) {
+            Collections.sort(result, (g1, g2) -> sign * Long.compare(g1.m_income + g1.m_expenses, g2.m_income + g2.m_expenses));
+        } else {
+            Collections.sort(result, (g1, g2) -> compareValues(g1.m_key, g2.m_key, sign));
+        }
+        if (m_limit >= 0 && result.size() > m_limit) {
+            result = new ArrayList(result.subList(0, m_limit));
+        }
+        return result;
+    }
+
+    /**
+     * Sum the prices of the transactions that match the query per group and
+     * per period, in a single pass. The order and limit of the query are not
+     * used: the groups are ordered by key.
+     *
+     * @param list
+     * @param dateField the date that decides the period of a transaction
+     * @param period the length of the periods
+     * @param from the first day of the first period
+     * @param to the last day of the last period
+     * @return
+     */
+    public GroupedSeries aggregate(QueryableList list, TRANSACTIONFIELD dateField, GroupedSeries.PERIOD period, LocalDate from, LocalDate to) {
+        return GroupedSeries.aggregate(narrow(list), compile(), m_groupBy, dateField, period, EpochDay.of(from), EpochDay.of(to));
+    }
+
+    /**
+     * Copy the transactions of a list that the query can select: the list is
+     * narrowed down to the first date range of the query, or copied whole.
+     * The copy does not follow changes to the list, so it can be aggregated on
+     * another thread. Must be called on the thread that changes the list.
+     *
+     * @param list
+     * @return
+     */
+    public QueryableList snapshot(QueryableList list) {
+        QueryableList narrowed = narrow(list);
+        return narrowed == list ? QueryableList.of(new ArrayList(list.toList())) : narrowed;
+    }
+
+    // Private functions -------------------------------------------------------
+    /**
+     * Narrow a list down to the first date range of the query, so the other
+     * conditions only run on the transactions in that range.
+     *
+     * @param list
+     * @return
+     */
+    private QueryableList narrow(QueryableList list) {
+        return m_rangeField == null ? list : list.selectRange(m_rangeField, m_rangeFrom, m_rangeTo);
+    }
+
+    /**
+     * Get a comparator that orders transactions by a field. Transactions
+     * without a value for the field come last, in both directions.
+     *
+     * @param field
+     * @param ascending
+     * @return
+     */
+    private static Comparator<Transaction> transactionComparator(TRANSACTIONFIELD field, boolean ascending) {
+        int sign = ascending ? 1 : -1;
+        if (isDateField(field)) {
+            return (t1, t2) -> {
+                int d1 = t1.getEpochDay(field);
+                int d2 = t2.getEpochDay(field);
+                if (d1 == EpochDay.NONE || d2 == EpochDay.NONE) {
+                    return Boolean.compare(d1 == EpochDay.NONE, d2 == EpochDay.NONE);
+                }
+                return sign * Integer.compare(d1, d2);
+            };
+        }
+        return (t1, t2) -> compareValues(t1.get(field), t2.get(field), sign);
+    }
+
+    private static boolean isDateField(TRANSACTIONFIELD field) {
+        switch (field) {
+            case DATE_ADDED:
+            case DATE_PAID:
+            case JOB_DATE:
+            case HIDDEN_DATE:
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * Compare two values of the same field. Null values come last.
+     *
+     * @param a
+     * @param b
+     * @param sign 1 to order ascending, -1 to order descending
+     * @return
+     */
+    private static int compareValues(Object a, Object b, int sign) {
+        if (a == null || b == null) {
+            return Boolean.compare(a == null, b == null);
+        }
+        if (a instanceof CategoryString) {
+            return sign * a.toString().compareTo(b.toString());
+        }
+        return sign * ((Comparable) a).compareTo(b);
+    }
+
+    // Public classes ----------------------------------------------------------
+    /**
+     * The aggregated prices of one group of transactions, in minor units.
+     */
+    public static class Group {
+
+        private final Object m_key;
+        private long m_income;
+        private long m_expenses;
+        private int m_count;
+
+        private Group(Object key) {
+            m_key = key;
+        }
+
+        private void add(long price) {
+            if (price > 0) {
+                m_income += price;
+            } else {
+                m_expenses += price;
+            }
+            m_count++;
+        }
+
+        private void merge(Group g) {
+            m_income += g.m_income;
+            m_expenses += g.m_expenses;
+            m_count += g.m_count;
+        }
+
+        /**
+         * Get the value of the group field that the transactions share.
+         *
+         * @return
+         */
+        public Object getKey() {
+            return m_key;
+        }
+
+        public Money getIncome() {
+            return Money.fromUnits(m_income);
+        }
+
+        public Money getExpenses() {
+            return Money.fromUnits(m_expenses);
+        }
+
+        public Money getProfit() {
+            return Money.fromUnits(m_income + m_expenses);
+        }
+
+        public int getCount() {
+            return m_count;
+        }
+    }
+}
@@ -0,0 +1,145 @@
+package data;
+
+import java.util.*;
+
+/**
+ * Bounded cache for the results of queries and aggregates, so showing the same
+ * year or the same settings again doesn't calculate everything again. The
+ * least recently used result is removed when the cache is full.
+ *
+ * The results are split in partitions, one per year. Every partition has a
+ * version that goes up when a transaction of that year changes. A result is
+ * stored with the version of its partition at the moment its calculation
+ * started, so a result of outdated data is never returned. Results over all
+ * years use the partition ALL, which changes with every partition.
+ *
+ * The values in the cache are shared, so they must not be changed.
+ *
+ * @author Anaïs Ools
+ */
+public class QueryCache {
+
+    // Members & constructors --------------------------------------------------
+    public static final int ALL = Integer.MIN_VALUE;
+
+    private final LinkedHashMap<Object, Result> m_entries;
+    private final HashMap<Integer, Long> m_versions;
+    private long m_baseVersion; // goes up when everything is outdated
+    private long m_hits;
+    private long m_misses;
+
+    /**
+     * Create a cache.
+     *
+     * @param capacity the maximum number of results to keep
+     */
+    public QueryCache(int capacity) {
+        m_entries = new LinkedHashMap<Object, Result>(capacity * 2, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Object, Result> eldest) {
+                return size() > capacity;
+            }
+        };
+        m_versions = new HashMap();
+    }
+
+    // Public functions --------------------------------------------------------
+    /**
+     * Get the version of a partition. Get it before calculating a result, and
+     * store the result with this version.
+     *
+     * @param partition a year, or ALL
+     * @return
+     */
+    public synchronized long getVersion(int partition) {
+        return m_baseVersion + m_versions.getOrDefault(partition, 0L);
+    }
+
+    /**
+     * Get a result that is still up to date.
+     *
+     * @param key the parameters of the query, with equals and hashCode
+     * @param partition a year, or ALL
+     * @return the result, or null if it is not in the cache or outdated
+     */
+    public synchronized Object get(Object key, int partition) {
+        Result e = m_entries.get(key);
+        if (e != null && e.m_partition == partition && e.m_version == getVersion(partition)) {
+            m_hits++;
+            return e.m_value;
+        }
+        m_misses++;
+        return null;
+    }
+
+    /**
+     * Store a result. If the partition changed while the result was
+     * calculated, the result is not stored.
+     *
+     * @param key the parameters of the query, with equals and hashCode
+     * @param partition a year, or ALL
+     * @param version the version of the partition before the calculation
+     * @param value
+     */
+    public synchronized void put(Object key, int partition, long version, Object value) {
+        if (version == getVersion(partition)) {
+            m_entries.put(key, new Result(partition, version, value));
+        }
+    }
+
+    /**
+     * Mark the results of a partition as outdated, and the results over all
+     * years as well.
+     *
+     * @param partition a year, or ALL
+     */
+    public synchronized void invalidate(int partition) {
+        m_versions.put(partition, m_versions.getOrDefault(partition, 0L) + 1);
+        m_versions.put(ALL, m_versions.getOrDefault(ALL, 0L) + 1);
+    }
+
+    /**
+     * Mark all results as outdated.
+     */
+    public synchronized void invalidateAll() {
+        m_entries.clear();
+        m_baseVersion++;
+    }
+
+    /**
+     * Get the number of times a result was found in the cache.
+     *
+     * @return
+     */
+    public synchronized long getHits() {
+        return m_hits;
+    }
+
+    /**
+     * Get the number of times a result had to be calculated.
+     *
+     * @return
+     */
+    public synchronized long getMisses() {
+        return m_misses;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return m_entries.size() + " results, " + m_hits + " hits, " + m_misses + " misses";
+    }
+
+    // Private classes ---------------------------------------------------------
+    private static class Result {
+
+        private final int m_partition;
+        private final long m_version;
+        private final Object m_value;
+
+        private Result(int partition, long version, Object value) {
+            m_partition = partition;
+            m_version = version;
+            m_value = value;
+        }
+    }
+}
@@ -1,8 +1,13 @@
 package data;
 
 import java.util.*;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 import model.CategoryString;
 import model.CategoryStringComparator;
+import model.EpochDay;
+import model.Money;
 import model.Transaction;
 import model.Transaction.TRANSACTIONFIELD;
 
@@ -10,31 +15,154 @@ import model.Transaction.TRANSACTIONFIELD;
  * Class extends a list of Transactions, adding functions to query Transactions.
  * The class is specifically made to query the Transaction object.
  *
+ * Lists that observe their transactions keep an index of the boolean fields
+ * as BitSets, aligned with the positions in the list. Selections on these
+ * fields are made with masks: BitSets of positions that can be combined
+ * before the transactions are selected with selectByMask.
+ *
  * @author Anaïs Ools
  */
 public class QueryableList extends Observable implements Observer, Iterable<Transaction> {
 
     // Members & constructors --------------------------------------------------
+    private static int m_parallelThreshold = 50000;
+
     private final ArrayList<Transaction> m_list;
+    private final boolean m_observing;
+    private final EnumMap<TRANSACTIONFIELD, SortedView> m_views;
+    private final HashMap<Long, Transaction> m_byID;
+    private FlagIndex m_flags; // null until needed, and after a delete
 
     public QueryableList() {
-        m_list = new ArrayList();
+        this(new ArrayList(), true);
     }
 
     public QueryableList(ArrayList<Transaction> list) {
+        this(list, true);
+    }
+
+    /**
+     * Create a list with the result of a query. Such a list does not observe
+     * its transactions: the list it was selected from already does.
+     *
+     * @param list
+     * @param observe
+     */
+    private QueryableList(ArrayList<Transaction> list, boolean observe) {
         m_list = list;
-        for (Transaction t : m_list) {
-            t.addObserver(this);
+        m_observing = observe;
+        m_views = new EnumMap(TRANSACTIONFIELD.class);
+        m_byID = observe ? new HashMap(list.size() * 2) : null;
+        if (observe) {
+            for (Transaction t : m_list) {
+                t.addObserver(this);
+                m_byID.put(t.getID(), t);
+            }
         }
     }
 
+    /**
+     * Wrap the result of a query in a list.
+     *
+     * @param list
+     * @return
+     */
+    static QueryableList of(ArrayList<Transaction> list) {
+        return new QueryableList(list, false);
+    }
+
+    // Package-private functions -----------------------------------------------
+    /**
+     * Get a stream over the transactions. Lists of at least the parallel
+     * threshold get a parallel stream, which splits the backing array over the
+     * common fork-join pool. Smaller lists are processed sequentially on the
+     * calling thread.
+     *
+     * @return
+     */
+    Stream<Transaction> stream() {
+        return m_list.size() >= m_parallelThreshold ? m_list.parallelStream() : m_list.stream();
+    }
+
+    /**
+     * Select all transactions that match a predicate. The result keeps the
+     * order of this list, also when the selection runs in parallel.
+     *
+     * @param predicate
+     * @return
+     */
+    QueryableList filter(Predicate<Transaction> predicate) {
+        ArrayList<Transaction> result = stream().filter(predicate).collect(Collectors.toCollection(ArrayList::new));
+        return of(result);
+    }
+
+    /**
+     * Select all transactions of which a date field lies between two epoch
+     * days, both inclusive. If this list keeps a sorted view on the field, the
+     * range is looked up in the view and the result is ordered by date.
+     *
+     * @param field a date field
+     * @param from
+     * @param to
+     * @return
+     */
+    QueryableList selectRange(TRANSACTIONFIELD field, int from, int to) {
+        if (m_observing) {
+            return of(getSortedView(field).range(from, to));
+        }
+        return filter(t -> {
+            int day = t.getEpochDay(field);
+            return day != EpochDay.NONE && day >= from && day <= to;
+        });
+    }
+
     // Private functions -------------------------------------------------------
+    private FlagIndex getFlagIndex() {
+        if (m_flags == null) {
+            m_flags = new FlagIndex(m_list);
+        }
+        return m_flags;
+    }
+
+    /**
+     * Select the transactions of which a boolean field has a certain value.
+     *
+     * @param flag
+     * @param value
+     * @return
+     */
+    private QueryableList selectFlag(TRANSACTIONFIELD flag, boolean value) {
+        if (!m_observing) {
+            return filter(t -> t.getFlag(flag) == value);
+        }
+        BitSet mask = getMask(flag);
+        if (!value) {
+            mask.flip(0, m_list.size());
+        }
+        return selectByMask(mask);
+    }
+
     /**
      * Tell observers that the data has changed.
+     *
+     * @param change
      */
-    private void notifyObserversOfChange() {
+    private void notifyObserversOfChange(Change change) {
         this.setChanged();
-        this.notifyObservers();
+        this.notifyObservers(change);
+    }
+
+    /**
+     * Get a copy of this list, sorted by a date field.
+     *
+     * @param field
+     * @return
+     */
+    private QueryableList sortBy(TRANSACTIONFIELD field) {
+        if (m_observing) {
+            return of(getSortedView(field).toList());
+        }
+        return of(SortedView.sort(m_list, field));
     }
 
     // Public functions --------------------------------------------------------
@@ -48,16 +176,66 @@ public class QueryableList extends Observable implements Observer, Iterable<Tran
         this.addObserver(o);
     }
 
+    /**
+     * Set the number of transactions from which queries run in parallel.
+     *
+     * @param threshold
+     */
+    public static void setParallelThreshold(int threshold) {
+        m_parallelThreshold = threshold;
+    }
+
+    public static int getParallelThreshold() {
+        return m_parallelThreshold;
+    }
+
     public void add(Transaction t) {
         m_list.add(t);
         t.addAsObserver(this);
-        notifyObserversOfChange();
+        if (m_observing) {
+            m_byID.put(t.getID(), t);
+        }
+        if (m_flags != null) {
+            m_flags.add(t, m_list.size() - 1);
+        }
+        for (SortedView view : m_views.values()) {
+            view.add(t);
+        }
+        notifyObserversOfChange(new Change(Change.TYPE.ADDED, t, null));
     }
 
     public void delete(Transaction t) {
         t.deleteObservers();
         m_list.remove(t);
-        notifyObserversOfChange();
+        if (m_observing) {
+            m_byID.remove(t.getID());
+        }
+        m_flags = null; // positions have shifted
+        for (SortedView view : m_views.values()) {
+            view.remove(t);
+        }
+        notifyObserversOfChange(new Change(Change.TYPE.DELETED, t, null));
+    }
+
+    /**
+     * Get a view on this list, ordered by a date field. Views of lists that
+     * observe their transactions are created once and then kept in order as
+     * the list changes. Views of query results are created on every call and
+     * are not updated afterwards.
+     *
+     * @param field DATE_ADDED, DATE_PAID, JOB_DATE or HIDDEN_DATE
+     * @return
+     */
+    public SortedView getSortedView(TRANSACTIONFIELD field) {
+        if (!m_observing) {
+            return new SortedView(field, m_list);
+        }
+        SortedView view = m_views.get(field);
+        if (view == null) {
+            view = new SortedView(field, m_list);
+            m_views.put(field, view);
+        }
+        return view;
     }
 
     public Transaction get(int index) {
@@ -65,6 +243,9 @@ public class QueryableList extends Observable implements Observer, Iterable<Tran
     }
 
     public Transaction get(long id) {
+        if (m_observing) {
+            return m_byID.get(id);
+        }
         for (Transaction t : m_list) {
             if (t.getID() == id) {
                 return t;
@@ -110,69 +291,181 @@ public class QueryableList extends Observable implements Observer, Iterable<Tran
 
     /**
      * This function is executed when a transaction in the list changes its
-     * data.
+     * data. The transaction passes the field that changed.
      *
-     * @param o
-     * @param o1
+     * @param o the transaction
+     * @param o1 the field
      */
     @Override
     public void update(Observable o, Object o1) {
-        notifyObserversOfChange();
+        Transaction t = (Transaction) o;
+        TRANSACTIONFIELD field = o1 instanceof TRANSACTIONFIELD ? (TRANSACTIONFIELD) o1 : null;
+        if (field == null) {
+            for (SortedView view : m_views.values()) {
+                view.update(t);
+            }
+        } else if (m_views.containsKey(field)) {
+            m_views.get(field).update(t);
+        }
+        if (m_flags != null) {
+            m_flags.update(t, field);
+        }
+        notifyObserversOfChange(new Change(Change.TYPE.UPDATED, t, field));
     }
 
     // Query functions ---------------------------------------------------------
-    public QueryableList selectDatePaidByYear(int year) {
-        QueryableList q = new QueryableList();
-        Calendar cal = Calendar.getInstance();
-        for (Transaction t : this) {
-            if (t.get(TRANSACTIONFIELD.DATE_PAID) != null) {
-                cal.setTime((Date) t.get(TRANSACTIONFIELD.DATE_PAID));
-                if (cal.get(Calendar.YEAR) == year) {
-                    q.add(t);
-                }
+    /**
+     * Select the transactions that match a query built with the Query class.
+     *
+     * @param query
+     * @return
+     */
+    public QueryableList select(Query query) {
+        return query.select(this);
+    }
+
+    /**
+     * Select the transactions with certain IDs, e.g. the result of a search.
+     * IDs that are not in this list are skipped.
+     *
+     * @param ids
+     * @return the transactions, in the order of the IDs
+     */
+    public QueryableList selectByIDs(long[] ids) {
+        ArrayList<Transaction> result = new ArrayList(ids.length);
+        for (long id : ids) {
+            Transaction t = get(id);
+            if (t != null) {
+                result.add(t);
             }
         }
-        return q;
+        return of(result);
     }
 
-    public QueryableList selectDateAddedByYear(int year) {
-        QueryableList q = new QueryableList();
-        Calendar cal = Calendar.getInstance();
-        for (Transaction t : this) {
-            if (t.get(TRANSACTIONFIELD.DATE_ADDED) != null) {
-                cal.setTime((Date) t.get(TRANSACTIONFIELD.DATE_ADDED));
-                if (cal.get(Calendar.YEAR) == year) {
-                    q.add(t);
-                }
+    /**
+     * Select the transactions at the positions in a mask, in the order of this
+     * list.
+     *
+     * @param mask positions in this list, e.g. from getMask
+     * @return
+     */
+    public QueryableList selectByMask(BitSet mask) {
+        ArrayList<Transaction> result = new ArrayList(mask.cardinality());
+        for (int i = mask.nextSetBit(0); i >= 0 && i < m_list.size(); i = mask.nextSetBit(i + 1)) {
+            result.add(m_list.get(i));
+        }
+        return of(result);
+    }
+
+    /**
+     * Get the positions of the transactions of which a boolean field is set.
+     *
+     * @param flag EXCEPTIONAL, HIDDEN, JOB or PAYBACK
+     * @return a new BitSet, which can be changed
+     */
+    public BitSet getMask(TRANSACTIONFIELD flag) {
+        if (m_observing) {
+            return (BitSet) getFlagIndex().get(flag).clone();
+        }
+        BitSet mask = new BitSet(m_list.size());
+        for (int i = 0; i < m_list.size(); i++) {
+            if (m_list.get(i).getFlag(flag)) {
+                mask.set(i);
             }
         }
-        return q;
+        return mask;
     }
 
-    public QueryableList selectDatePaidByMonth(int month) {
-        QueryableList q = new QueryableList();
-        Calendar cal = Calendar.getInstance();
-        for (Transaction t : this) {
-            if (t.get(TRANSACTIONFIELD.DATE_PAID) != null) {
-                cal.setTime((Date) t.get(TRANSACTIONFIELD.DATE_PAID));
-                if (cal.get(Calendar.MONTH) == month) {
-                    q.add(t);
-                }
+    /**
+     * Get the positions of the transactions that are hidden on a certain day.
+     * Hidden transactions of which the hidden date has passed are looked up
+     * in the sorted view on HIDDEN_DATE.
+     *
+     * @param day an epoch day
+     * @return a new BitSet, which can be changed
+     */
+    public BitSet getHiddenMask(int day) {
+        BitSet mask = getMask(TRANSACTIONFIELD.HIDDEN);
+        if (m_observing) {
+            FlagIndex flags = getFlagIndex();
+            for (Transaction t : getSortedView(TRANSACTIONFIELD.HIDDEN_DATE).range(Integer.MIN_VALUE + 1, day)) {
+                mask.clear(flags.positionOf(t));
+            }
+        } else {
+            for (int i = mask.nextSetBit(0); i >= 0; i = mask.nextSetBit(i + 1)) {
+                mask.set(i, m_list.get(i).isHiddenOn(day));
             }
         }
-        return q;
+        return mask;
     }
 
-    public QueryableList selectDateAddedByMonth(int month) {
-        QueryableList q = new QueryableList();
-        Calendar cal = Calendar.getInstance();
-        for (Transaction t : this) {
-            cal.setTime((Date) t.get(TRANSACTIONFIELD.DATE_ADDED));
-            if (cal.get(Calendar.MONTH) == month) {
-                q.add(t);
+    /**
+     * Get the positions of the transactions of which a date field lies
+     * between two epoch days, both inclusive.
+     *
+     * @param field a date field
+     * @param from
+     * @param to
+     * @return a new BitSet, which can be changed
+     */
+    public BitSet getRangeMask(TRANSACTIONFIELD field, int from, int to) {
+        BitSet mask = new BitSet(m_list.size());
+        if (m_observing) {
+            FlagIndex flags = getFlagIndex();
+            for (Transaction t : getSortedView(field).range(from, to)) {
+                mask.set(flags.positionOf(t));
+            }
+        } else {
+            for (int i = 0; i < m_list.size(); i++) {
+                int day = m_list.get(i).getEpochDay(field);
+                if (day != EpochDay.NONE && day >= from && day <= to) {
+                    mask.set(i);
+                }
             }
         }
-        return q;
+        return mask;
+    }
+
+    public QueryableList selectDatePaidByYear(int year) {
+        return selectByYear(TRANSACTIONFIELD.DATE_PAID, year);
+    }
+
+    public QueryableList selectDateAddedByYear(int year) {
+        return selectByYear(TRANSACTIONFIELD.DATE_ADDED, year);
+    }
+
+    public QueryableList selectDatePaidByMonth(int month) {
+        return selectByMonth(TRANSACTIONFIELD.DATE_PAID, month);
+    }
+
+    public QueryableList selectDateAddedByMonth(int month) {
+        return selectByMonth(TRANSACTIONFIELD.DATE_ADDED, month);
+    }
+
+    /**
+     * Select all transactions of which a date field falls in a certain year.
+     *
+     * @param field the date field
+     * @param year
+     * @return
+     */
+    public QueryableList selectByYear(TRANSACTIONFIELD field, int year) {
+        return selectRange(field, EpochDay.firstDayOfYear(year), EpochDay.firstDayOfYear(year + 1) - 1);
+    }
+
+    /**
+     * Select all transactions of which a date field falls in a certain month,
+     * regardless of the year.
+     *
+     * @param field the date field
+     * @param month the month, from 0 (January) to 11 (December)
+     * @return
+     */
+    public QueryableList selectByMonth(TRANSACTIONFIELD field, int month) {
+        return filter(t -> {
+            int day = t.getEpochDay(field);
+            return day != EpochDay.NONE && EpochDay.month(day) == month;
+        });
     }
 
     /**
@@ -181,15 +474,12 @@ public class QueryableList extends Observable implements Observer, Iterable<Tran
      * @return an array with all the distinct categories
      */
     public String[] getDistinctCategories() {
-        ArrayList<String> list = new ArrayList();
-        for (Transaction t : this) {
-            String element = (String) t.get(TRANSACTIONFIELD.CATEGORY);
-            if (!list.contains(element)) {
-                list.add(element);
-            }
-        }
-        Collections.sort(list);
-        return (String[]) list.toArray(new String[list.size()]);
+        Set<String> set = stream()
+                .map(t -> (String) t.get(TRANSACTIONFIELD.CATEGORY))
+                .collect(Collectors.toSet());
+        String[] result = set.toArray(new String[set.size()]);
+        Arrays.sort(result);
+        return result;
     }
 
     /**
@@ -198,21 +488,14 @@ public class QueryableList extends Observable implements Observer, Iterable<Tran
      * @return an array with all the distinct transactors
      */
     public CategoryString[] getDistinctTransactors() {
-        ArrayList<CategoryString> list = new ArrayList();
-        for (Transaction t : this) {
-            CategoryString element = (CategoryString) t.get(TRANSACTIONFIELD.TRANSACTOR);
-            if (!list.contains(element)) {
-                list.add(element);
-            }
-            if (t.get(TRANSACTIONFIELD.PAYBACK_TRANSACTOR) != null) {
-                element = (CategoryString) t.get(TRANSACTIONFIELD.PAYBACK_TRANSACTOR);
-                if (!list.contains(element)) {
-                    list.add(element);
-                }
-            }
-        }
-        Collections.sort(list, new CategoryStringComparator());
-        return (CategoryString[]) list.toArray(new CategoryString[list.size()]);
+        Set<CategoryString> set = stream()
+                .flatMap(t -> t.get(TRANSACTIONFIELD.PAYBACK_TRANSACTOR) == null
+                        ? Stream.of((CategoryString) t.get(TRANSACTIONFIELD.TRANSACTOR))
+                        : Stream.of((CategoryString) t.get(TRANSACTIONFIELD.TRANSACTOR), (CategoryString) t.get(TRANSACTIONFIELD.PAYBACK_TRANSACTOR)))
+                .collect(Collectors.toSet());
+        CategoryString[] result = set.toArray(new CategoryString[set.size()]);
+        Arrays.sort(result, new CategoryStringComparator());
+        return result;
     }
 
     /**
@@ -221,15 +504,33 @@ public class QueryableList extends Observable implements Observer, Iterable<Tran
      * @return an array with all the distinct payment methods
      */
     public CategoryString[] getDistinctPaymentMethods() {
-        ArrayList<CategoryString> list = new ArrayList();
-        for (Transaction t : this) {
-            CategoryString element = (CategoryString) t.get(TRANSACTIONFIELD.PAYMENT_METHOD);
-            if (!list.contains(element)) {
-                list.add(element);
+        Set<CategoryString> set = stream()
+                .map(t -> (CategoryString) t.get(TRANSACTIONFIELD.PAYMENT_METHOD))
+                .collect(Collectors.toSet());
+        CategoryString[] result = set.toArray(new CategoryString[set.size()]);
+        Arrays.sort(result, new CategoryStringComparator());
+        return result;
+    }
+
+    /**
+     * Count how often each value of one or more fields is used, e.g. to
+     * suggest the most used transactors first.
+     *
+     * @param fields
+     * @return a map of the values, as strings, to the number of transactions
+     * that use them
+     */
+    public HashMap<String, Integer> countUsage(TRANSACTIONFIELD... fields) {
+        HashMap<String, Integer> result = new HashMap();
+        for (Transaction t : m_list) {
+            for (TRANSACTIONFIELD field : fields) {
+                Object value = t.get(field);
+                if (value != null) {
+                    result.merge(value.toString(), 1, Integer::sum);
+                }
             }
         }
-        Collections.sort(list, new CategoryStringComparator());
-        return (CategoryString[]) list.toArray(new CategoryString[list.size()]);
+        return result;
     }
 
     /**
@@ -237,12 +538,8 @@ public class QueryableList extends Observable implements Observer, Iterable<Tran
      *
      * @return
      */
-    public double getTotalPrice() {
-        double total = 0.0;
-        for (Transaction t : this) {
-            total += (double) t.get(TRANSACTIONFIELD.PRICE);
-        }
-        return total;
+    public Money getTotalPrice() {
+        return Money.fromUnits(stream().mapToLong(t -> ((Money) t.get(TRANSACTIONFIELD.PRICE)).getUnits()).sum());
     }
 
     /**
@@ -251,82 +548,37 @@ public class QueryableList extends Observable implements Observer, Iterable<Tran
      * @return
      */
     public QueryableList getLoans() {
-        QueryableList q = new QueryableList();
-        for (Transaction t : this) {
-            if ((boolean) t.get(TRANSACTIONFIELD.PAYBACK)) {
-                q.add(t);
-            }
-        }
-        return q;
+        return selectFlag(TRANSACTIONFIELD.PAYBACK, true);
     }
 
     /**
-     * Sort this list according to date added.
+     * Get a copy of this list, sorted according to date added. Transactions
+     * without this date come last. This list itself keeps its order.
      *
-     * @return the same list, but sorted.
+     * @return a sorted copy of the list.
      */
     public QueryableList sortByDateAdded() {
-        Collections.sort(m_list, new Comparator<Transaction>() {
-            @Override
-            public int compare(Transaction o1, Transaction o2) {
-                if (o1.get(TRANSACTIONFIELD.DATE_ADDED) != null && o2.get(TRANSACTIONFIELD.DATE_ADDED) != null) {
-                    return ((Date) o1.get(TRANSACTIONFIELD.DATE_ADDED)).compareTo((Date) o2.get(TRANSACTIONFIELD.DATE_ADDED));
-                } else if (o1.get(TRANSACTIONFIELD.DATE_ADDED) != null) {
-                    return -1;
-                } else if (o2.get(TRANSACTIONFIELD.DATE_ADDED) != null) {
-                    return 1;
-                } else {
-                    return 1;
-                }
-            }
-        });
-        return this;
+        return sortBy(TRANSACTIONFIELD.DATE_ADDED);
     }
 
     /**
-     * Sort this list according to date paid.
+     * Get a copy of this list, sorted according to date paid. Transactions
+     * without this date come last. This list itself keeps its order.
      *
-     * @return the same list, but sorted.
+     * @return a sorted copy of the list.
      */
     public QueryableList sortByDatePaid() {
-        Collections.sort(m_list, new Comparator<Transaction>() {
-            @Override
-            public int compare(Transaction o1, Transaction o2) {
-                if (o1.get(TRANSACTIONFIELD.DATE_PAID) != null && o2.get(TRANSACTIONFIELD.DATE_PAID) != null) {
-                    return ((Date) o1.get(TRANSACTIONFIELD.DATE_PAID)).compareTo((Date) o2.get(TRANSACTIONFIELD.DATE_PAID));
-                } else if (o1.get(TRANSACTIONFIELD.DATE_PAID) != null) {
-                    return -1;
-                } else if (o2.get(TRANSACTIONFIELD.DATE_PAID) != null) {
-                    return 1;
-                } else {
-                    return 1;
-                }
-            }
-        });
-        return this;
+        return sortBy(TRANSACTIONFIELD.DATE_PAID);
     }
 
     /**
-     * Sort this list according to job date (if present).
+     * Get a copy of this list, sorted according to job date (if present). Transactions
+     * without this date come last. This list itself keeps its order.
      *
-     * @return the same list, but sorted.
+     * @return a sorted copy of the list.
      */
     public QueryableList sortByJobDate() {
-        Collections.sort(m_list, new Comparator<Transaction>() {
-            @Override
-            public int compare(Transaction o1, Transaction o2) {
-                if (o1.get(TRANSACTIONFIELD.JOB_DATE) != null && o2.get(TRANSACTIONFIELD.JOB_DATE) != null) {
-                    return ((Date) o1.get(TRANSACTIONFIELD.JOB_DATE)).compareTo((Date) o2.get(TRANSACTIONFIELD.JOB_DATE));
-                } else if (o1.get(TRANSACTIONFIELD.JOB_DATE) != null) {
-                    return -1;
-                } else if (o2.get(TRANSACTIONFIELD.JOB_DATE) != null) {
-                    return 1;
-                } else {
-                    return 1;
-                }
-            }
-        });
-        return this;
+        return sortBy(TRANSACTIONFIELD.JOB_DATE);
     }
 
     /**
@@ -335,13 +587,7 @@ public class QueryableList extends Observable implements Observer, Iterable<Tran
      * @return
      */
     public QueryableList selectUnexceptional() {
-        QueryableList q = new QueryableList();
-        for (Transaction t : this) {
-            if (!((boolean) t.get(TRANSACTIONFIELD.EXCEPTIONAL))) {
-                q.add(t);
-            }
-        }
-        return q;
+        return selectFlag(TRANSACTIONFIELD.EXCEPTIONAL, false);
     }
 
     /**
@@ -350,47 +596,54 @@ public class QueryableList extends Observable implements Observer, Iterable<Tran
      * @return
      */
     public QueryableList selectNonhidden() {
-        QueryableList q = new QueryableList();
-        Date today = new Date();
-        for (Transaction t : this) {
-            if (((boolean) t.get(TRANSACTIONFIELD.HIDDEN))) {
-                Date d = (Date) t.get(TRANSACTIONFIELD.HIDDEN_DATE);
-                if (d != null && !d.after(today)) {
-                    q.add(t);
-                }
-            } else {
-                q.add(t);
-            }
+        int today = EpochDay.today();
+        if (!m_observing) {
+            return filter(t -> !t.isHiddenOn(today));
         }
-        return q;
+        BitSet mask = getHiddenMask(today);
+        mask.flip(0, m_list.size());
+        return selectByMask(mask);
     }
 
-    public HashMap<String, double[]> groupPriceByCategory() {
-        HashMap<String, double[]> result = new HashMap();
-        for (Transaction t : this) {
+    /**
+     * Sum the prices per category, separately for incoming and outgoing
+     * amounts. The sums are in minor units (see Money).
+     *
+     * @return a map of category to {income, expenses}
+     */
+    public HashMap<String, long[]> groupPriceByCategory() {
+        return stream().collect(HashMap::new, (HashMap<String, long[]> result, Transaction t) -> {
             String category = (String) t.get(TRANSACTIONFIELD.CATEGORY);
-            double price = (double) t.get(TRANSACTIONFIELD.PRICE);
-            double[] categoryArray = result.get(category);
+            long price = ((Money) t.get(TRANSACTIONFIELD.PRICE)).getUnits();
+            long[] categoryArray = result.get(category);
             if (categoryArray == null) {
-                categoryArray = new double[2];
+                categoryArray = new long[2];
+                result.put(category, categoryArray);
             }
             if (price > 0) {
                 categoryArray[0] += price;
             } else if (price < 0) {
                 categoryArray[1] += price;
             }
-            result.put(category, categoryArray);
-        }
-        return result;
+        }, (HashMap<String, long[]> result, HashMap<String, long[]> partial) -> {
+            for (Map.Entry<String, long[]> e : partial.entrySet()) {
+                long[] categoryArray = result.get(e.getKey());
+                if (categoryArray == null) {
+                    result.put(e.getKey(), e.getValue());
+                } else {
+                    categoryArray[0] += e.getValue()[0];
+                    categoryArray[1] += e.getValue()[1];
+                }
+            }
+        });
     }
 
+    /**
+     * Select all transactions that are jobs.
+     *
+     * @return
+     */
     public QueryableList selectJobs() {
-        QueryableList q = new QueryableList();
-        for (Transaction t : this) {
-            if ((boolean) t.get(TRANSACTIONFIELD.JOB)) {
-                q.add(t);
-            }
-        }
-        return q;
+        return selectFlag(TRANSACTIONFIELD.JOB, true);
     }
 }
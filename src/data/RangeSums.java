@@ -0,0 +1,447 @@
+package data;
+
+import java.util.*;
+import java.util.concurrent.CountDownLatch;
+import model.EpochDay;
+import model.Money;
+import model.Transaction;
+import model.Transaction.TRANSACTIONFIELD;
+
+/**
+ * Sums of the prices of the transactions of a QueryableList over any range of
+ * dates. The incoming and outgoing amounts are kept in Fenwick trees over the
+ * days that have transactions: the sum between two dates is found in
+ * logarithmic time, and a changed transaction is added or removed in
+ * logarithmic time as well.
+ *
+ * A tree only holds the days it had when it was built, so its size does not
+ * depend on the range of the dates: a mistyped date far in the future costs
+ * one position. Amounts on other days are kept in a short list beside the
+ * tree and summed directly, until there are enough of them to build the tree
+ * again.
+ *
+ * There is a tree for all transactions, one for the exceptional transactions
+ * and one for each category. Transactions without the date the index is built
+ * on are not counted.
+ *
+ * The index observes the list and updates itself when a transaction is added,
+ * deleted or when its price, category, exceptional flag or date changes. All
+ * functions are thread-safe.
+ *
+ * Building the trees walks the whole list, so it is done on a background
+ * thread, from a copy of the list. Changes made in the meantime are applied
+ * once the trees are built. Until then, all sums are zero: use isBuilt or
+ * awaitBuilt first.
+ *
+ * @author Anaïs Ools
+ */
+public class RangeSums implements Observer {
+
+    // Members & constructors --------------------------------------------------
+    private static final int MAX_PENDING = 64; // amounts beside a tree before it is built again
+
+    private final TRANSACTIONFIELD m_field;
+    private final IdentityHashMap<Transaction, Entry> m_entries;
+    private final Tree m_all;
+    private final Tree m_exceptional;
+    private final HashMap<Object, Tree> m_categories;
+    private ArrayList<Transaction> m_snapshot; // the transactions to build from, null once built
+    private ArrayList<Change> m_changes; // the changes made while building, null once built
+    private final CountDownLatch m_built;
+
+    /**
+     * Prepare the index of the transactions of a list. The list is copied
+     * and observed from now on; the trees are built with build. Must be
+     * called on the thread that changes the list.
+     *
+     * @param field the date field to sum over
+     * @param list
+     */
+    public RangeSums(TRANSACTIONFIELD field, QueryableList list) {
+        m_field = field;
+        m_entries = new IdentityHashMap(list.count() * 2);
+        m_all = new Tree();
+        m_exceptional = new Tree();
+        m_categories = new HashMap();
+        m_snapshot = new ArrayList(list.toList());
+        m_changes = new ArrayList();
+        m_built = new CountDownLatch(1);
+        list.addAsObserver(this);
+    }
+
+    // Private functions -------------------------------------------------------
+    /**
+     * Add or subtract an entry in the trees.
+     *
+     * @param e
+     * @param sign 1 to add, -1 to subtract
+     */
+    private void add(Entry e, int sign) {
+        if (e.m_day == EpochDay.NONE) {
+            return;
+        }
+        m_all.add(e.m_day, e.m_price, sign);
+        if (e.m_exceptional) {
+            m_exceptional.add(e.m_day, e.m_price, sign);
+        }
+        Tree category = m_categories.get(e.m_category);
+        if (category == null) {
+            category = new Tree();
+            if (m_all.m_built) { // a new category after the list was indexed
+                category.build();
+            }
+            m_categories.put(e.m_category, category);
+        }
+        category.add(e.m_day, e.m_price, sign);
+    }
+
+    private void index(Transaction t) {
+        Entry e = new Entry(t, m_field);
+        m_entries.put(t, e);
+        add(e, 1);
+    }
+
+    private void remove(Transaction t) {
+        Entry e = m_entries.remove(t);
+        if (e != null) {
+            add(e, -1);
+        }
+    }
+
+    /**
+     * Get the sum of a tree between two days, both inclusive.
+     *
+     * @param tree
+     * @param from
+     * @param to
+     * @param income true for the incoming amounts, false for the outgoing
+     * @return
+     */
+    private static long sum(Tree tree, int from, int to, boolean income) {
+        return tree == null || from > to ? 0 : tree.sum(from, to, income);
+    }
+
+    private Tree tree(Object category) {
+        if (m_changes != null) {
+            return null; // not built yet
+        }
+        return category == null ? m_all : m_categories.get(category);
+    }
+
+    /**
+     * Apply a change of the list to the trees. Only changes to the summed
+     * fields cause the transaction to be indexed again.
+     *
+     * @param c
+     */
+    private void apply(Change c) {
+        switch (c.getType()) {
+            case ADDED:
+                index(c.getTransaction());
+                break;
+            case DELETED:
+                remove(c.getTransaction());
+                break;
+            case UPDATED:
+                TRANSACTIONFIELD field = c.getField();
+                if (field == null || field == m_field || field == TRANSACTIONFIELD.PRICE
+                        || field == TRANSACTIONFIELD.CATEGORY || field == TRANSACTIONFIELD.EXCEPTIONAL) {
+                    remove(c.getTransaction());
+                    index(c.getTransaction());
+                }
+                break;
+        }
+    }
+
+    // Package-private functions -----------------------------------------------
+    /**
+     * Build the trees from the copy of the list, and then apply the changes
+     * made since the copy was taken. Runs on a background thread: only the
+     * changes are applied while holding the lock.
+     */
+    void build() {
+        for (Transaction t : m_snapshot) {
+            Entry e = new Entry(t, m_field);
+            m_entries.put(t, e);
+            add(e, 1);
+        }
+        m_all.build();
+        m_exceptional.build();
+        for (Tree tree : m_categories.values()) {
+            tree.build();
+        }
+        synchronized (this) {
+            for (Change c : m_changes) {
+                apply(c);
+            }
+            m_changes = null;
+            m_snapshot = null;
+        }
+        m_built.countDown();
+    }
+
+    // Public functions --------------------------------------------------------
+    public TRANSACTIONFIELD getField() {
+        return m_field;
+    }
+
+    public boolean isBuilt() {
+        return m_built.getCount() == 0;
+    }
+
+    /**
+     * Wait until the trees are built.
+     *
+     * @throws InterruptedException
+     */
+    public void awaitBuilt() throws InterruptedException {
+        m_built.await();
+    }
+
+    /**
+     * Get the sum of the incoming amounts between two days, both inclusive.
+     *
+     * @param category the category, or null for all transactions
+     * @param from
+     * @param to
+     * @return
+     */
+    public synchronized Money getIncome(Object category, int from, int to) {
+        return Money.fromUnits(sum(tree(category), from, to, true));
+    }
+
+    /**
+     * Get the sum of the outgoing amounts between two days, both inclusive.
+     *
+     * @param category the category, or null for all transactions
+     * @param from
+     * @param to
+     * @return a negative amount, or zero
+     */
+    public synchronized Money getExpenses(Object category, int from, int to) {
+        return Money.fromUnits(sum(tree(category), from, to, false));
+    }
+
+    /**
+     * Get the sum of all amounts between two days, both inclusive.
+     *
+     * @param category the category, or null for all transactions
+     * @param from
+     * @param to
+     * @param withoutExceptional whether to leave out exceptional transactions;
+     * only used for all transactions
+     * @return
+     */
+    public synchronized Money getProfit(Object category, int from, int to, boolean withoutExceptional) {
+        Tree tree = tree(category);
+        long profit = sum(tree, from, to, true) + sum(tree, from, to, false);
+        if (category == null && withoutExceptional && tree != null) {
+            profit -= sum(m_exceptional, from, to, true) + sum(m_exceptional, from, to, false);
+        }
+        return Money.fromUnits(profit);
+    }
+
+    /**
+     * Get the categories of the indexed transactions, including categories of
+     * which all transactions were removed.
+     *
+     * @return
+     */
+    public synchronized Set<Object> getCategories() {
+        if (m_changes != null) {
+            return new HashSet();
+        }
+        return new HashSet(m_categories.keySet());
+    }
+
+    /**
+     * Get the incoming and outgoing amounts per category between two days, as
+     * a GroupedSeries without periods. With byCategory false, all
+     * transactions form one group with key null.
+     *
+     * @param from
+     * @param to
+     * @param byCategory
+     * @return
+     */
+    public synchronized GroupedSeries getTotals(int from, int to, boolean byCategory) {
+        HashMap<Object, long[]> totals = new HashMap();
+        if (m_changes != null) {
+            return GroupedSeries.ofTotals(totals); // not built yet
+        }
+        if (byCategory) {
+            for (Map.Entry<Object, Tree> e : m_categories.entrySet()) {
+                long income = sum(e.getValue(), from, to, true);
+                long expenses = sum(e.getValue(), from, to, false);
+                if (income != 0 || expenses != 0) {
+                    totals.put(e.getKey(), new long[]{income, expenses});
+                }
+            }
+        } else {
+            totals.put(null, new long[]{sum(m_all, from, to, true), sum(m_all, from, to, false)});
+        }
+        return GroupedSeries.ofTotals(totals);
+    }
+
+    /**
+     * This function is executed when the list changes. While the trees are
+     * being built, the change is kept to be applied afterwards.
+     *
+     * @param o
+     * @param o1 the Change
+     */
+    @Override
+    public synchronized void update(Observable o, Object o1) {
+        if (!(o1 instanceof Change)) {
+            return;
+        }
+        if (m_changes != null) {
+            m_changes.add((Change) o1);
+        } else {
+            apply((Change) o1);
+        }
+    }
+
+    // Private classes ---------------------------------------------------------
+    /**
+     * The values of a transaction as they were added to the trees, so they
+     * can be subtracted again after the transaction changed.
+     */
+    private static class Entry {
+
+        private final int m_day;
+        private final long m_price;
+        private final Object m_category;
+        private final boolean m_exceptional;
+
+        private Entry(Transaction t, TRANSACTIONFIELD field) {
+            m_day = t.getEpochDay(field);
+            Money price = (Money) t.get(TRANSACTIONFIELD.PRICE);
+            m_price = price == null ? 0 : price.getUnits();
+            m_category = t.get(TRANSACTIONFIELD.CATEGORY);
+            m_exceptional = t.getFlag(TRANSACTIONFIELD.EXCEPTIONAL);
+        }
+    }
+
+    /**
+     * Fenwick tree over the days that had transactions when it was built,
+     * with the incoming and outgoing amounts of each day kept apart. Amounts
+     * on other days wait in a list until the tree is built again.
+     */
+    private static class Tree {
+
+        private int[] m_days = new int[0]; // ascending
+        private long[] m_income = new long[1];
+        private long[] m_expenses = new long[1];
+        private int[] m_pendingDays = new int[8];
+        private long[] m_pendingAmounts = new long[8];
+        private boolean[] m_pendingIncome = new boolean[8];
+        private int m_pendingCount;
+        private boolean m_built; // false while the list is indexed; the tree is built once afterwards
+
+        /**
+         * Add or subtract a price on a day. The tree is built again when too
+         * many amounts are waiting beside it.
+         *
+         * @param day the epoch day
+         * @param price
+         * @param sign 1 to add, -1 to subtract
+         */
+        private void add(int day, long price, int sign) {
+            int position = Arrays.binarySearch(m_days, day);
+            if (position >= 0) {
+                long[] tree = price > 0 ? m_income : m_expenses;
+                for (int i = position + 1; i < tree.length; i += i & -i) {
+                    tree[i] += sign * price;
+                }
+                return;
+            }
+            if (m_pendingCount == m_pendingDays.length) {
+                m_pendingDays = Arrays.copyOf(m_pendingDays, m_pendingCount * 2);
+                m_pendingAmounts = Arrays.copyOf(m_pendingAmounts, m_pendingCount * 2);
+                m_pendingIncome = Arrays.copyOf(m_pendingIncome, m_pendingCount * 2);
+            }
+            m_pendingDays[m_pendingCount] = day;
+            m_pendingAmounts[m_pendingCount] = sign * price;
+            m_pendingIncome[m_pendingCount] = price > 0;
+            m_pendingCount++;
+            if (m_built && m_pendingCount > MAX_PENDING) {
+                build();
+            }
+        }
+
+        /**
+         * Build the tree again over the days with amounts, taking in the
+         * waiting amounts. Days of which all amounts were removed are left
+         * out.
+         */
+        private void build() {
+            TreeMap<Integer, long[]> days = new TreeMap();
+            for (int i = 0; i < m_days.length; i++) {
+                long income = prefix(i, true) - prefix(i - 1, true);
+                long expenses = prefix(i, false) - prefix(i - 1, false);
+                days.put(m_days[i], new long[]{income, expenses});
+            }
+            for (int i = 0; i < m_pendingCount; i++) {
+                long[] amounts = days.get(m_pendingDays[i]);
+                if (amounts == null) {
+                    amounts = new long[2];
+                    days.put(m_pendingDays[i], amounts);
+                }
+                amounts[m_pendingIncome[i] ? 0 : 1] += m_pendingAmounts[i];
+            }
+            days.values().removeIf(amounts -> amounts[0] == 0 && amounts[1] == 0);
+
+            m_days = new int[days.size()];
+            m_income = new long[days.size() + 1];
+            m_expenses = new long[days.size() + 1];
+            int position = 0;
+            for (Map.Entry<Integer, long[]> e : days.entrySet()) {
+                m_days[position] = e.getKey();
+                m_income[position + 1] = e.getValue()[0];
+                m_expenses[position + 1] = e.getValue()[1];
+                position++;
+            }
+            for (int i = 1; i < m_income.length; i++) { // Fenwick trees from the values, in linear time
+                int parent = i + (i & -i);
+                if (parent < m_income.length) {
+                    m_income[parent] += m_income[i];
+                    m_expenses[parent] += m_expenses[i];
+                }
+            }
+            m_pendingCount = 0;
+            m_built = true;
+        }
+
+        private long prefix(int position, boolean income) {
+            long[] tree = income ? m_income : m_expenses;
+            long sum = 0;
+            for (int i = position + 1; i > 0; i -= i & -i) {
+                sum += tree[i];
+            }
+            return sum;
+        }
+
+        /**
+         * Get the sum between two days, both inclusive.
+         *
+         * @param from
+         * @param to
+         * @param income true for the incoming amounts, false for the outgoing
+         * @return
+         */
+        private long sum(int from, int to, boolean income) {
+            int start = Arrays.binarySearch(m_days, from);
+            start = start >= 0 ? start : -start - 1; // the first day at or after from
+            int end = Arrays.binarySearch(m_days, to);
+            end = end >= 0 ? end : -end - 2; // the last day at or before to
+            long sum = start > end ? 0 : prefix(end, income) - prefix(start - 1, income);
+            for (int i = 0; i < m_pendingCount; i++) {
+                if (m_pendingIncome[i] == income && m_pendingDays[i] >= from && m_pendingDays[i] <= to) {
+                    sum += m_pendingAmounts[i];
+                }
+            }
+            return sum;
+        }
+    }
+}
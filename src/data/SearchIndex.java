@@ -0,0 +1,258 @@
+package data;
+
+import java.text.Normalizer;
+import java.util.*;
+import model.CategoryString;
+import model.Transaction;
+import model.Transaction.TRANSACTIONFIELD;
+
+/**
+ * Full-text index over the transactions of a QueryableList. The description,
+ * category, transactor and payment method of each transaction are split into
+ * lowercase words without accents. For every word the index keeps a sorted
+ * array with the IDs of the transactions that contain it.
+ *
+ * A search matches every word of the query as a prefix, so "cafe gent" finds
+ * a transaction described as "Café" with transactor "Gentse Feesten". The index
+ * observes the list and updates itself when a transaction is added, deleted
+ * or when one of the indexed fields changes.
+ *
+ * @author Anaïs Ools
+ */
+public class SearchIndex implements Observer {
+
+    // Members & constructors --------------------------------------------------
+    private static final long[] NO_IDS = new long[0];
+
+    private final TreeMap<String, Postings> m_index;
+    private final HashMap<Long, String[]> m_wordsOf;
+
+    public SearchIndex(QueryableList list) {
+        m_index = new TreeMap();
+        m_wordsOf = new HashMap(list.count() * 2);
+        for (Transaction t : list) {
+            add(t);
+        }
+        list.addAsObserver(this);
+    }
+
+    // Private functions -------------------------------------------------------
+    /**
+     * Split a string into lowercase words without accents.
+     *
+     * @param s
+     * @param words the list to add the words to
+     */
+    private static void tokenize(String s, Collection<String> words) {
+        if (s == null) {
+            return;
+        }
+        String lower = s.toLowerCase();
+        for (int i = 0; i < lower.length(); i++) {
+            if (lower.charAt(i) > 127) { // only normalize when needed
+                lower = Normalizer.normalize(lower, Normalizer.Form.NFD).replaceAll("\\p{M}", "");
+                break;
+            }
+        }
+        int start = -1;
+        for (int i = 0; i <= lower.length(); i++) {
+            boolean letter = i < lower.length() && Character.isLetterOrDigit(lower.charAt(i));
+            if (letter && start < 0) {
+                start = i;
+            } else if (!letter && start >= 0) {
+                words.add(lower.substring(start, i));
+                start = -1;
+            }
+        }
+    }
+
+    private static void tokenize(CategoryString cs, Collection<String> words) {
+        if (cs != null) {
+            tokenize(cs.getCategory(), words);
+            tokenize(cs.getValue(), words);
+        }
+    }
+
+    private void add(Transaction t) {
+        HashSet<String> words = new HashSet();
+        tokenize((String) t.get(TRANSACTIONFIELD.DESCRIPTION), words);
+        tokenize((String) t.get(TRANSACTIONFIELD.CATEGORY), words);
+        tokenize((CategoryString) t.get(TRANSACTIONFIELD.TRANSACTOR), words);
+        tokenize((CategoryString) t.get(TRANSACTIONFIELD.PAYMENT_METHOD), words);
+        for (String word : words) {
+            Postings p = m_index.get(word);
+            if (p == null) {
+                p = new Postings();
+                m_index.put(word, p);
+            }
+            p.add(t.getID());
+        }
+        m_wordsOf.put(t.getID(), words.toArray(new String[words.size()]));
+    }
+
+    private void remove(Transaction t) {
+        String[] words = m_wordsOf.remove(t.getID());
+        if (words == null) {
+            return;
+        }
+        for (String word : words) {
+            Postings p = m_index.get(word);
+            p.remove(t.getID());
+            if (p.m_size == 0) {
+                m_index.remove(word);
+            }
+        }
+    }
+
+    /**
+     * Get the sorted IDs of all transactions with a word that starts with a
+     * prefix.
+     *
+     * @param prefix
+     * @return
+     */
+    private long[] searchPrefix(String prefix) {
+        Collection<Postings> matches = m_index.subMap(prefix, prefix + Character.MAX_VALUE).values();
+        if (matches.isEmpty()) {
+            return NO_IDS;
+        }
+        if (matches.size() == 1) {
+            Postings p = matches.iterator().next();
+            return Arrays.copyOf(p.m_ids, p.m_size);
+        }
+        int total = 0;
+        for (Postings p : matches) {
+            total += p.m_size;
+        }
+        long[] ids = new long[total];
+        int pos = 0;
+        for (Postings p : matches) {
+            System.arraycopy(p.m_ids, 0, ids, pos, p.m_size);
+            pos += p.m_size;
+        }
+        Arrays.sort(ids);
+        int size = 0; // remove doubles
+        for (int i = 0; i < ids.length; i++) {
+            if (size == 0 || ids[size - 1] != ids[i]) {
+                ids[size++] = ids[i];
+            }
+        }
+        return Arrays.copyOf(ids, size);
+    }
+
+    /**
+     * Intersect two sorted arrays of IDs.
+     *
+     * @param a
+     * @param b
+     * @return
+     */
+    private static long[] intersect(long[] a, long[] b) {
+        long[] result = new long[Math.min(a.length, b.length)];
+        int size = 0;
+        int i = 0;
+        int j = 0;
+        while (i < a.length && j < b.length) {
+            if (a[i] < b[j]) {
+                i++;
+            } else if (a[i] > b[j]) {
+                j++;
+            } else {
+                result[size++] = a[i];
+                i++;
+                j++;
+            }
+        }
+        return Arrays.copyOf(result, size);
+    }
+
+    // Public functions --------------------------------------------------------
+    /**
+     * Search the transactions that contain every word of a query, each word
+     * matching as the start of a word in the transaction.
+     *
+     * @param query
+     * @return the sorted IDs of the matching transactions, empty if the query
+     * contains no words
+     */
+    public synchronized long[] search(String query) {
+        ArrayList<String> words = new ArrayList();
+        tokenize(query, words);
+        if (words.isEmpty()) {
+            return NO_IDS;
+        }
+        long[][] results = new long[words.size()][];
+        for (int i = 0; i < words.size(); i++) {
+            results[i] = searchPrefix(words.get(i));
+        }
+        Arrays.sort(results, (a, b) -> Integer.compare(a.length, b.length)); // intersect smallest first
+        long[] ids = results[0];
+        for (int i = 1; i < results.length && ids.length > 0; i++) {
+            ids = intersect(ids, results[i]);
+        }
+        return ids;
+    }
+
+    /**
+     * This function is executed when the list changes. Only changes to the
+     * indexed fields cause the transaction to be indexed again.
+     *
+     * @param o
+     * @param o1 the Change
+     */
+    @Override
+    public synchronized void update(Observable o, Object o1) {
+        if (!(o1 instanceof Change)) {
+            return;
+        }
+        Change c = (Change) o1;
+        switch (c.getType()) {
+            case ADDED:
+                add(c.getTransaction());
+                break;
+            case DELETED:
+                remove(c.getTransaction());
+                break;
+            case UPDATED:
+                if (c.getField() == null || c.getField() == TRANSACTIONFIELD.DESCRIPTION
+                        || c.getField() == TRANSACTIONFIELD.CATEGORY || c.getField() == TRANSACTIONFIELD.TRANSACTOR
+                        || c.getField() == TRANSACTIONFIELD.PAYMENT_METHOD) {
+                    remove(c.getTransaction());
+                    add(c.getTransaction());
+                }
+                break;
+        }
+    }
+
+    // Private classes ---------------------------------------------------------
+    /**
+     * Sorted array of transaction IDs.
+     */
+    private static class Postings {
+
+        private long[] m_ids = new long[4];
+        private int m_size;
+
+        private void add(long id) {
+            int index = Arrays.binarySearch(m_ids, 0, m_size, id);
+            if (index >= 0) {
+                return;
+            }
+            index = -index - 1;
+            if (m_size == m_ids.length) {
+                m_ids = Arrays.copyOf(m_ids, m_size * 2);
+            }
+            System.arraycopy(m_ids, index, m_ids, index + 1, m_size - index);
+            m_ids[index] = id;
+            m_size++;
+        }
+
+        private void remove(long id) {
+            int index = Arrays.binarySearch(m_ids, 0, m_size, id);
+            if (index >= 0) {
+                System.arraycopy(m_ids, index + 1, m_ids, index, m_size - index - 1);
+                m_size--;
+            }
+        }
+    }
+}
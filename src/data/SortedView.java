@@ -0,0 +1,244 @@
+package data;
+
+import java.util.*;
+import model.EpochDay;
+import model.Transaction;
+import model.Transaction.TRANSACTIONFIELD;
+
+/**
+ * View on the transactions of a QueryableList, ordered by a date field. The
+ * view keeps its own array of transactions next to an array with the epoch day
+ * of each transaction, so lookups and comparisons never touch the transactions
+ * themselves. The list the view was made from is never reordered.
+ *
+ * The view is kept in order incrementally: the QueryableList tells it when a
+ * transaction is added, deleted or when its date changes. Transactions without
+ * a date come last. Transactions with the same date keep the order in which
+ * they were added.
+ *
+ * @author Anaïs Ools
+ */
+public class SortedView implements Iterable<Transaction> {
+
+    // Members & constructors --------------------------------------------------
+    private static final int NO_DATE = Integer.MAX_VALUE; // sort key of transactions without date
+
+    private final TRANSACTIONFIELD m_field;
+    private final IdentityHashMap<Transaction, Integer> m_keyOf;
+    private Transaction[] m_items;
+    private int[] m_keys;
+    private int m_size;
+
+    /**
+     * Create a view on a list, ordered by a date field.
+     *
+     * @param field DATE_ADDED, DATE_PAID, JOB_DATE or HIDDEN_DATE
+     * @param list
+     */
+    SortedView(TRANSACTIONFIELD field, List<Transaction> list) {
+        m_field = field;
+        m_keyOf = new IdentityHashMap(list.size() * 2);
+        m_items = sort(list, field).toArray(new Transaction[Math.max(16, list.size())]);
+        m_keys = new int[m_items.length];
+        m_size = list.size();
+        for (int i = 0; i < m_size; i++) {
+            int key = keyOf(m_items[i]);
+            m_keys[i] = key;
+            m_keyOf.put(m_items[i], key);
+        }
+    }
+
+    // Package-private functions -----------------------------------------------
+    /**
+     * Sort a list by a date field without changing the list. The date of each
+     * transaction is read once and packed together with its position into a
+     * long, so the sort itself only compares primitives and is stable.
+     *
+     * @param list
+     * @param field a date field
+     * @return a new, sorted list
+     */
+    static ArrayList<Transaction> sort(List<Transaction> list, TRANSACTIONFIELD field) {
+        int size = list.size();
+        long[] packed = new long[size];
+        for (int i = 0; i < size; i++) {
+            packed[i] = ((long) sortKey(list.get(i).getEpochDay(field)) << 32) | i;
+        }
+        Arrays.sort(packed);
+        ArrayList<Transaction> result = new ArrayList(size);
+        for (long p : packed) {
+            result.add(list.get((int) p));
+        }
+        return result;
+    }
+
+    void add(Transaction t) {
+        int key = keyOf(t);
+        insert(t, key, upperBound(key));
+    }
+
+    void remove(Transaction t) {
+        Integer key = m_keyOf.get(t);
+        if (key != null) {
+            removeAt(indexOf(t, key));
+        }
+    }
+
+    /**
+     * Move a transaction to its new place after its date changed.
+     *
+     * @param t
+     */
+    void update(Transaction t) {
+        Integer oldKey = m_keyOf.get(t);
+        if (oldKey == null || oldKey == keyOf(t)) {
+            return;
+        }
+        removeAt(indexOf(t, oldKey));
+        add(t);
+    }
+
+    /**
+     * Get the transactions of which the date lies between two epoch days, both
+     * inclusive, in order of date.
+     *
+     * @param from
+     * @param to
+     * @return
+     */
+    ArrayList<Transaction> range(int from, int to) {
+        int start = lowerBound(sortKey(from));
+        int end = Math.min(upperBound(to), lowerBound(NO_DATE));
+        ArrayList<Transaction> result = new ArrayList(Math.max(0, end - start));
+        for (int i = start; i < end; i++) {
+            result.add(m_items[i]);
+        }
+        return result;
+    }
+
+    // Private functions -------------------------------------------------------
+    private static int sortKey(int day) {
+        return day == EpochDay.NONE ? NO_DATE : day;
+    }
+
+    private int keyOf(Transaction t) {
+        return sortKey(t.getEpochDay(m_field));
+    }
+
+    /**
+     * Find the first position with a key of at least the given key.
+     */
+    private int lowerBound(int key) {
+        int low = 0;
+        int high = m_size;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (m_keys[mid] < key) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Find the first position with a key larger than the given key.
+     */
+    private int upperBound(int key) {
+        int low = 0;
+        int high = m_size;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (m_keys[mid] <= key) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Find the position of a transaction among the transactions with the same
+     * key.
+     */
+    private int indexOf(Transaction t, int key) {
+        for (int i = lowerBound(key); i < m_size && m_keys[i] == key; i++) {
+            if (m_items[i] == t) {
+                return i;
+            }
+        }
+        throw new IllegalStateException("Transaction " + t.getID() + " is not in the view on " + m_field);
+    }
+
+    private void insert(Transaction t, int key, int index) {
+        if (m_size == m_items.length) {
+            int capacity = m_items.length + (m_items.length >> 1);
+            m_items = Arrays.copyOf(m_items, capacity);
+            m_keys = Arrays.copyOf(m_keys, capacity);
+        }
+        System.arraycopy(m_items, index, m_items, index + 1, m_size - index);
+        System.arraycopy(m_keys, index, m_keys, index + 1, m_size - index);
+        m_items[index] = t;
+        m_keys[index] = key;
+        m_keyOf.put(t, key);
+        m_size++;
+    }
+
+    private void removeAt(int index) {
+        m_keyOf.remove(m_items[index]);
+        System.arraycopy(m_items, index + 1, m_items, index, m_size - index - 1);
+        System.arraycopy(m_keys, index + 1, m_keys, index, m_size - index - 1);
+        m_items[--m_size] = null;
+    }
+
+    // Public functions --------------------------------------------------------
+    public TRANSACTIONFIELD getField() {
+        return m_field;
+    }
+
+    public int size() {
+        return m_size;
+    }
+
+    public Transaction get(int index) {
+        if (index < 0 || index >= m_size) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", size: " + m_size);
+        }
+        return m_items[index];
+    }
+
+    /**
+     * Get the earliest date in the view.
+     *
+     * @return the epoch day, or NONE if no transaction has a date
+     */
+    public int getFirstDay() {
+        return m_size == 0 || m_keys[0] == NO_DATE ? EpochDay.NONE : m_keys[0];
+    }
+
+    /**
+     * Get the latest date in the view.
+     *
+     * @return the epoch day, or NONE if no transaction has a date
+     */
+    public int getLastDay() {
+        int end = lowerBound(NO_DATE);
+        return end == 0 ? EpochDay.NONE : m_keys[end - 1];
+    }
+
+    /**
+     * Copy the transactions of the view, in order, to a new list.
+     *
+     * @return
+     */
+    public ArrayList<Transaction> toList() {
+        return new ArrayList(Arrays.asList(m_items).subList(0, m_size));
+    }
+
+    @Override
+    public Iterator<Transaction> iterator() {
+        return Collections.unmodifiableList(Arrays.asList(m_items).subList(0, m_size)).iterator();
+    }
+}
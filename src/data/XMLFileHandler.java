@@ -3,11 +3,13 @@ package data;
 import java.io.*;
 import java.nio.charset.*;
 import java.nio.file.*;
-import java.text.*;
+import java.time.LocalDate;
 import java.util.*;
 import javafx.util.Pair;
 import javax.xml.parsers.*;
 import model.CategoryString;
+import model.EpochDay;
+import model.Money;
 import org.xml.sax.*;
 import org.xml.sax.helpers.*;
 import model.Transaction;
@@ -27,7 +29,6 @@ public class XMLFileHandler {
     private final ArrayList<Transaction> m_transactions;
     private boolean m_fatalError;
     private final String m_metaData = "<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"yes\"?>";
-    private final SimpleDateFormat m_dateFormat = new SimpleDateFormat("dd/MM/yyyy");
 
     // Constructor -------------------------------------------------------------
     public XMLFileHandler(String filename) {
@@ -122,14 +123,22 @@ public class XMLFileHandler {
     }
 
     /**
-     * Write a list of strings to the file.
+     * Write a list of strings to the file. The lines are written to a
+     * temporary file first, which then replaces the file at once, so the file
+     * is never left half written.
      *
      * @param lines
      */
     private void writeToFile(ArrayList<String> lines) {
         try {
             Path file = Paths.get(m_filesLocation + m_filename);
-            Files.write(file, lines, Charset.forName("UTF-8"));
+            Path temp = Paths.get(m_filesLocation + m_filename + ".tmp");
+            Files.write(temp, lines, Charset.forName("UTF-8"));
+            try {
+                Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException ex) {
+                Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING);
+            }
         } catch (IOException ex) {
             System.err.println(ex.getMessage());
             m_fatalError = true;
@@ -177,11 +186,13 @@ public class XMLFileHandler {
                 }
                 requiredFields.remove(field);
                 Class preferredClass = t.getFieldClass(field);
-                if (preferredClass.equals(Double.class)) {
+                if (preferredClass.equals(Money.class)) {
+                    value = Money.parse((String) value);
+                } else if (preferredClass.equals(Double.class)) {
                     value = Double.parseDouble((String) value);
                 } else if (preferredClass.equals(Boolean.class)) {
                     value = Boolean.parseBoolean((String) value);
-                } else if (preferredClass.equals(Date.class)) {
+                } else if (preferredClass.equals(LocalDate.class)) {
                     value = stringToDate((String) value);
                 } else if (preferredClass.equals(CategoryString.class)) {
                     value = new CategoryString((String) value);
@@ -256,28 +267,28 @@ public class XMLFileHandler {
         }
         if (o.getClass().equals(String.class)) {
             return ((String) o).replace("&", "&amp;");
-        } else if (o.getClass().equals(Date.class)) {
-            return dateToString((Date) o);
+        } else if (o.getClass().equals(LocalDate.class)) {
+            return dateToString((LocalDate) o);
         } else {
             return String.valueOf(o);
         }
     }
 
     /**
-     * Parse a string to a date. If this fails, the function returns a new date
-     * object.
+     * Parse a string to a date. If this fails, the function returns today's
+     * date.
      *
      * @param s
      * @return
      */
-    private Date stringToDate(String s) {
-        try {
-            return m_dateFormat.parse(s);
-        } catch (ParseException ex) {
-            System.out.println(ex.getMessage());
+    private LocalDate stringToDate(String s) {
+        int day = EpochDay.parse(s);
+        if (day == EpochDay.NONE) {
+            System.out.println("Unparseable date: \"" + s + "\"");
             m_fatalError = true;
-            return new Date();
+            return LocalDate.now();
         }
+        return EpochDay.toLocalDate(day);
     }
 
     /**
@@ -286,8 +297,8 @@ public class XMLFileHandler {
      * @param d
      * @return
      */
-    private String dateToString(Date d) {
-        return m_dateFormat.format(d);
+    private String dateToString(LocalDate d) {
+        return EpochDay.format(EpochDay.of(d));
     }
 
     // Public functions --------------------------------------------------------
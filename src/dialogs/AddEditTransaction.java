@@ -6,10 +6,12 @@ import java.awt.event.ActionEvent;
 import java.awt.event.ItemEvent;
 import java.beans.PropertyChangeEvent;
 import java.beans.PropertyChangeListener;
+import java.time.LocalDate;
 import java.util.*;
 import javafx.util.Pair;
 import javax.swing.*;
 import model.CategoryString;
+import model.Money;
 import model.Transaction;
 import model.Transaction.TRANSACTIONFIELD;
 import view.swingextensions.*;
@@ -109,22 +111,25 @@ public class AddEditTransaction extends JDialog {
         String[] categories = Data.GetInstance().getTransactions().getDistinctCategories();
         String[] transactors = categoryStringArrayToStringArray(Data.GetInstance().getTransactions().getDistinctTransactors());
         String[] paymentMethods = categoryStringArrayToStringArray(Data.GetInstance().getTransactions().getDistinctPaymentMethods());
+        int[] categoryUsage = getUsage(categories, TRANSACTIONFIELD.CATEGORY);
+        int[] transactorUsage = getUsage(transactors, TRANSACTIONFIELD.TRANSACTOR, TRANSACTIONFIELD.PAYBACK_TRANSACTOR);
+        int[] paymentMethodUsage = getUsage(paymentMethods, TRANSACTIONFIELD.PAYMENT_METHOD);
 
-        Date today = new Date();
+        LocalDate today = LocalDate.now();
 
         // text fields
         m_fieldsGeneral = new ArrayList();
         m_fieldsGeneral.add(new Pair(TRANSACTIONFIELD.DESCRIPTION, new ValidationTextField(false, "Description", null)));
         m_fieldsGeneral.add(new Pair(TRANSACTIONFIELD.PRICE, new ValidationCurrencyField()));
-        m_fieldsGeneral.add(new Pair(TRANSACTIONFIELD.CATEGORY, new ValidationComboBox(false, "Category", null, categories)));
-        m_fieldsGeneral.add(new Pair(TRANSACTIONFIELD.TRANSACTOR, new ValidationComboBox(false, "Transactor category > Transactor", " > ", transactors)));
+        m_fieldsGeneral.add(new Pair(TRANSACTIONFIELD.CATEGORY, new ValidationComboBox(false, "Category", null, categories, categoryUsage)));
+        m_fieldsGeneral.add(new Pair(TRANSACTIONFIELD.TRANSACTOR, new ValidationComboBox(false, "Transactor category > Transactor", " > ", transactors, transactorUsage)));
         m_fieldsGeneral.add(new Pair(TRANSACTIONFIELD.DATE_ADDED, new ValidationDateField(false, today, "Date added (dd/mm/yyyy)")));
         m_datePaidField = new ValidationDateField(true, today, "Date paid (dd/mm/yyyy)");
         m_fieldsGeneral.add(new Pair(TRANSACTIONFIELD.DATE_PAID, m_datePaidField));
-        m_fieldsGeneral.add(new Pair(TRANSACTIONFIELD.PAYMENT_METHOD, new ValidationComboBox(false, "Payment method category > Payment method", " > ", paymentMethods)));
+        m_fieldsGeneral.add(new Pair(TRANSACTIONFIELD.PAYMENT_METHOD, new ValidationComboBox(false, "Payment method category > Payment method", " > ", paymentMethods, paymentMethodUsage)));
 
         m_fieldsLoans = new ArrayList();
-        m_fieldsLoans.add(new Pair(TRANSACTIONFIELD.PAYBACK_TRANSACTOR, new ValidationComboBox(false, "Loan transactor category > Loan transactor", " > ", transactors)));
+        m_fieldsLoans.add(new Pair(TRANSACTIONFIELD.PAYBACK_TRANSACTOR, new ValidationComboBox(false, "Loan transactor category > Loan transactor", " > ", transactors, transactorUsage)));
         m_fieldsLoans.add(new Pair(TRANSACTIONFIELD.PAYBACK_PRICE, new ValidationCurrencyField()));
 
         m_fieldsJob = new ArrayList();
@@ -270,7 +275,7 @@ public class AddEditTransaction extends JDialog {
         if (field == TRANSACTIONFIELD.JOB_WAGE) {
             Object hours = m_transaction.get(TRANSACTIONFIELD.JOB_HOURS);
             if (hours != null && ((double) hours) > 0) {
-                content = ((double) content) / ((double) hours);
+                content = ((Money) content).divide((double) hours);
             } else {
                 content = null;
             }
@@ -310,9 +315,9 @@ public class AddEditTransaction extends JDialog {
                 Object hours = m_transaction.get(TRANSACTIONFIELD.JOB_HOURS);
                 Object wage = m_transaction.get(TRANSACTIONFIELD.JOB_WAGE);
                 if (hours != null && wage != null) {
-                    value = ((double) wage) * ((double) hours);
+                    value = ((Money) wage).multiply((double) hours);
                 } else {
-                    value = 0.0;
+                    value = Money.ZERO;
                 }
             }
             if (value != null && value.getClass().equals(CategoryString.class)) {
@@ -336,6 +341,22 @@ public class AddEditTransaction extends JDialog {
         return result;
     }
 
+    /**
+     * Count how often each value is used in the transactions.
+     *
+     * @param values
+     * @param fields the fields in which the values occur
+     * @return the number of uses of each value
+     */
+    private int[] getUsage(String[] values, TRANSACTIONFIELD... fields) {
+        HashMap<String, Integer> counts = Data.GetInstance().getTransactions().countUsage(fields);
+        int[] usage = new int[values.length];
+        for (int i = 0; i < values.length; i++) {
+            usage[i] = counts.getOrDefault(values[i], 0);
+        }
+        return usage;
+    }
+
     /**
      * Set if the dialog should show fields for loans or not. This also sets the
      * isLoan checkbox.
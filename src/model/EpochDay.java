@@ -0,0 +1,241 @@
+package model;
+
+import java.time.LocalDate;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Helper functions for dates stored as an epoch day: the number of days since
+ * 01/01/1970. An epoch day is a plain int, so dates can be stored, compared
+ * and split into a year and month without creating any objects. LocalDate is
+ * only used at the edges, when a date is handed to or taken from the views.
+ *
+ * All functions are thread-safe.
+ *
+ * @author Anaïs Ools
+ */
+public final class EpochDay {
+
+    /**
+     * Value that represents "no date".
+     */
+    public static final int NONE = Integer.MIN_VALUE;
+
+    private static final int MAX_CACHED = 20000;
+    private static final ConcurrentHashMap<String, Integer> m_parsed = new ConcurrentHashMap();
+    private static final ConcurrentHashMap<Integer, String> m_formatted = new ConcurrentHashMap();
+
+    private EpochDay() { // only static functions
+    }
+
+    // Conversion --------------------------------------------------------------
+    /**
+     * Convert a LocalDate to an epoch day.
+     *
+     * @param date
+     * @return the epoch day, or NONE if the date is null
+     */
+    public static int of(LocalDate date) {
+        return date == null ? NONE : (int) date.toEpochDay();
+    }
+
+    /**
+     * Convert a year, month (1-12) and day of the month to an epoch day.
+     *
+     * @param year
+     * @param month
+     * @param day
+     * @return
+     */
+    public static int of(int year, int month, int day) {
+        // days-from-civil, see http://howardhinnant.github.io/date_algorithms.html
+        int y = month <= 2 ? year - 1 : year;
+        int era = (y >= 0 ? y : y - 399) / 400;
+        int yoe = y - era * 400;
+        int doy = (153 * (month > 2 ? month - 3 : month + 9) + 2) / 5 + day - 1;
+        int doe = yoe * 365 + yoe / 4 - yoe / 100 + doy;
+        return era * 146097 + doe - 719468;
+    }
+
+    /**
+     * Convert an epoch day to a LocalDate.
+     *
+     * @param day
+     * @return the date, or null if the day is NONE
+     */
+    public static LocalDate toLocalDate(int day) {
+        return day == NONE ? null : LocalDate.ofEpochDay(day);
+    }
+
+    /**
+     * Get the epoch day of today.
+     *
+     * @return
+     */
+    public static int today() {
+        return (int) LocalDate.now().toEpochDay();
+    }
+
+    // Fields ------------------------------------------------------------------
+    /**
+     * Get the year of an epoch day.
+     *
+     * @param day
+     * @return
+     */
+    public static int year(int day) {
+        int z = day + 719468;
+        int era = (z >= 0 ? z : z - 146096) / 146097;
+        int doe = z - era * 146097;
+        int yoe = (doe - doe / 1460 + doe / 36524 - doe / 146096) / 365;
+        int doy = doe - (365 * yoe + yoe / 4 - yoe / 100);
+        int mp = (5 * doy + 2) / 153;
+        return yoe + era * 400 + (mp >= 10 ? 1 : 0);
+    }
+
+    /**
+     * Get the month of an epoch day, from 0 (January) to 11 (December), like
+     * Calendar.MONTH.
+     *
+     * @param day
+     * @return
+     */
+    public static int month(int day) {
+        int z = day + 719468;
+        int era = (z >= 0 ? z : z - 146096) / 146097;
+        int doe = z - era * 146097;
+        int yoe = (doe - doe / 1460 + doe / 36524 - doe / 146096) / 365;
+        int doy = doe - (365 * yoe + yoe / 4 - yoe / 100);
+        int mp = (5 * doy + 2) / 153;
+        return mp < 10 ? mp + 2 : mp - 10;
+    }
+
+    /**
+     * Get the day of the month of an epoch day, from 1 to 31.
+     *
+     * @param day
+     * @return
+     */
+    public static int dayOfMonth(int day) {
+        int z = day + 719468;
+        int era = (z >= 0 ? z : z - 146096) / 146097;
+        int doe = z - era * 146097;
+        int yoe = (doe - doe / 1460 + doe / 36524 - doe / 146096) / 365;
+        int doy = doe - (365 * yoe + yoe / 4 - yoe / 100);
+        int mp = (5 * doy + 2) / 153;
+        return doy - (153 * mp + 2) / 5 + 1;
+    }
+
+    /**
+     * Get the epoch day of the first of January of a year.
+     *
+     * @param year
+     * @return
+     */
+    public static int firstDayOfYear(int year) {
+        return of(year, 1, 1);
+    }
+
+    // Parsing & formatting ----------------------------------------------------
+    /**
+     * Parse a date in the format dd/MM/yyyy. Day and month may have one or two
+     * digits. Parsed strings are cached, since save files contain the same
+     * dates over and over.
+     *
+     * @param s
+     * @return the epoch day, or NONE if the string is not a valid date
+     */
+    public static int parse(String s) {
+        if (s == null) {
+            return NONE;
+        }
+        Integer cached = m_parsed.get(s);
+        if (cached != null) {
+            return cached;
+        }
+        int day = parseUncached(s.trim());
+        if (day != NONE && m_parsed.size() < MAX_CACHED) {
+            m_parsed.put(s, day);
+        }
+        return day;
+    }
+
+    /**
+     * Format an epoch day as dd/MM/yyyy.
+     *
+     * @param day
+     * @return the formatted date, or an empty string if the day is NONE
+     */
+    public static String format(int day) {
+        if (day == NONE) {
+            return "";
+        }
+        String s = m_formatted.get(day);
+        if (s == null) {
+            char[] c = new char[10];
+            int d = dayOfMonth(day);
+            int m = month(day) + 1;
+            int y = year(day);
+            c[0] = (char) ('0' + d / 10);
+            c[1] = (char) ('0' + d % 10);
+            c[2] = '/';
+            c[3] = (char) ('0' + m / 10);
+            c[4] = (char) ('0' + m % 10);
+            c[5] = '/';
+            c[6] = (char) ('0' + y / 1000 % 10);
+            c[7] = (char) ('0' + y / 100 % 10);
+            c[8] = (char) ('0' + y / 10 % 10);
+            c[9] = (char) ('0' + y % 10);
+            s = new String(c);
+            if (m_formatted.size() < MAX_CACHED) {
+                m_formatted.put(day, s);
+            }
+        }
+        return s;
+    }
+
+    private static int parseUncached(String s) {
+        int[] parts = new int[3];
+        int part = 0;
+        int digits = 0;
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c >= '0' && c <= '9') {
+                parts[part] = parts[part] * 10 + (c - '0');
+                digits++;
+                if (digits > (part == 2 ? 4 : 2)) {
+                    return NONE;
+                }
+            } else if (c == '/' && part < 2 && digits > 0) {
+                part++;
+                digits = 0;
+            } else {
+                return NONE;
+            }
+        }
+        if (part != 2 || digits == 0) {
+            return NONE;
+        }
+        int d = parts[0];
+        int m = parts[1];
+        int y = parts[2];
+        if (m < 1 || m > 12 || d < 1 || d > lengthOfMonth(y, m)) {
+            return NONE;
+        }
+        return of(y, m, d);
+    }
+
+    private static int lengthOfMonth(int year, int month) {
+        switch (month) {
+            case 2:
+                boolean leap = (year % 4 == 0 && year % 100 != 0) || year % 400 == 0;
+                return leap ? 29 : 28;
+            case 4:
+            case 6:
+            case 9:
+            case 11:
+                return 30;
+            default:
+                return 31;
+        }
+    }
+}
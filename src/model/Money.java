@@ -0,0 +1,244 @@
+package model;
+
+/**
+ * Immutable amount of money. The amount is stored as a whole number of minor
+ * units (ten-thousandths of the currency unit), so adding up amounts is exact
+ * and does not need any boxing. Four decimals are kept instead of two so that
+ * derived amounts, like the wage per hour of a job, keep their precision.
+ *
+ * @author Anaïs Ools
+ */
+public final class Money implements Comparable<Money> {
+
+    // Members & constructors --------------------------------------------------
+    public static final int DECIMALS = 4;
+    public static final long SCALE = 10000;
+    public static final Money ZERO = new Money(0);
+
+    private final long m_units;
+
+    private Money(long units) {
+        m_units = units;
+    }
+
+    /**
+     * Create an amount from a number of minor units.
+     *
+     * @param units
+     * @return
+     */
+    public static Money fromUnits(long units) {
+        return units == 0 ? ZERO : new Money(units);
+    }
+
+    /**
+     * Create an amount from a double, rounded to the nearest minor unit.
+     *
+     * @param d
+     * @return
+     */
+    public static Money valueOf(double d) {
+        return fromUnits(Math.round(d * SCALE));
+    }
+
+    /**
+     * Parse a string to an amount. The last '.' or ',' in the string is the
+     * decimal separator, other separators and non-numeric characters (like
+     * spaces and valuta signs) are ignored. Doubles written in scientific
+     * notation, as found in older save files, are accepted too.
+     *
+     * @param s
+     * @return
+     * @throws NumberFormatException if the string contains no digits
+     */
+    public static Money parse(String s) {
+        if (s.indexOf('E') >= 0 || s.indexOf('e') >= 0) {
+            try {
+                return valueOf(Double.parseDouble(s.trim()));
+            } catch (NumberFormatException nfe) {
+                // not a double, e.g. a valuta sign with an 'e': parse as usual
+            }
+        }
+        int separator = Math.max(s.lastIndexOf('.'), s.lastIndexOf(','));
+        boolean negative = false;
+        boolean hasDigits = false;
+        boolean roundUp = false;
+        long whole = 0;
+        long fraction = 0;
+        int fractionDigits = 0;
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c == '-') {
+                negative = true;
+            } else if (c >= '0' && c <= '9') {
+                hasDigits = true;
+                if (separator >= 0 && i > separator) {
+                    if (fractionDigits < DECIMALS) {
+                        fraction = fraction * 10 + (c - '0');
+                    } else if (fractionDigits == DECIMALS) {
+                        roundUp = c >= '5';
+                    }
+                    fractionDigits++;
+                } else {
+                    if (whole > (Long.MAX_VALUE / SCALE) / 10) {
+                        throw new NumberFormatException("Amount too large: \"" + s + "\"");
+                    }
+                    whole = whole * 10 + (c - '0');
+                }
+            }
+        }
+        if (!hasDigits) {
+            throw new NumberFormatException("No digits in \"" + s + "\"");
+        }
+        for (int i = fractionDigits; i < DECIMALS; i++) {
+            fraction *= 10;
+        }
+        long units = whole * SCALE + fraction + (roundUp ? 1 : 0);
+        return fromUnits(negative ? -units : units);
+    }
+
+    // Package-private functions -----------------------------------------------
+    /**
+     * Write an amount with two decimals, rounded half away from zero, into a
+     * char array from right to left. Shared with PriceFormatter.
+     *
+     * @param units the amount in minor units
+     * @param buffer
+     * @param end the index after the last character to write
+     * @param decimalSeparator
+     * @param groupingSeparator or 0 to not group the thousands
+     * @return the index of the first character written
+     */
+    static int format(long units, char[] buffer, int end, char decimalSeparator, char groupingSeparator) {
+        long cents = (Math.abs(units) + SCALE / 200) / (SCALE / 100);
+        int pos = end;
+        buffer[--pos] = (char) ('0' + cents % 10);
+        buffer[--pos] = (char) ('0' + cents / 10 % 10);
+        buffer[--pos] = decimalSeparator;
+        long whole = cents / 100;
+        int digits = 0;
+        do {
+            if (digits > 0 && digits % 3 == 0 && groupingSeparator != 0) {
+                buffer[--pos] = groupingSeparator;
+            }
+            buffer[--pos] = (char) ('0' + whole % 10);
+            whole /= 10;
+            digits++;
+        } while (whole > 0);
+        if (units < 0 && cents > 0) {
+            buffer[--pos] = '-';
+        }
+        return pos;
+    }
+
+    // Public functions --------------------------------------------------------
+    /**
+     * Get the amount as a number of minor units.
+     *
+     * @return
+     */
+    public long getUnits() {
+        return m_units;
+    }
+
+    public double toDouble() {
+        return (double) m_units / SCALE;
+    }
+
+    public int signum() {
+        return Long.signum(m_units);
+    }
+
+    public boolean isZero() {
+        return m_units == 0;
+    }
+
+    public Money add(Money m) {
+        return fromUnits(m_units + m.m_units);
+    }
+
+    public Money subtract(Money m) {
+        return fromUnits(m_units - m.m_units);
+    }
+
+    public Money negate() {
+        return fromUnits(-m_units);
+    }
+
+    /**
+     * Multiply the amount by a factor, rounded to the nearest minor unit.
+     *
+     * @param factor
+     * @return
+     */
+    public Money multiply(double factor) {
+        return fromUnits(Math.round(m_units * factor));
+    }
+
+    /**
+     * Divide the amount by a divisor, rounded to the nearest minor unit.
+     *
+     * @param divisor
+     * @return
+     */
+    public Money divide(double divisor) {
+        return fromUnits(Math.round(m_units / divisor));
+    }
+
+    /**
+     * Format the amount with two decimals, rounded half away from zero.
+     *
+     * @param decimalSeparator the character between the whole part and the
+     * decimals
+     * @param groupingSeparator the character between each group of thousands,
+     * or 0 to not group the thousands
+     * @return
+     */
+    public String format(char decimalSeparator, char groupingSeparator) {
+        char[] buffer = new char[32];
+        int pos = format(m_units, buffer, buffer.length, decimalSeparator, groupingSeparator);
+        return new String(buffer, pos, buffer.length - pos);
+    }
+
+    /**
+     * Plain representation of the amount, as used in the save file: a '.' as
+     * decimal separator and between two and four decimals.
+     *
+     * @return
+     */
+    @Override
+    public String toString() {
+        long abs = Math.abs(m_units);
+        long fraction = abs % SCALE;
+        int decimals = DECIMALS;
+        while (decimals > 2 && fraction % 10 == 0) {
+            fraction /= 10;
+            decimals--;
+        }
+        StringBuilder sb = new StringBuilder(24);
+        if (m_units < 0) {
+            sb.append('-');
+        }
+        sb.append(abs / SCALE).append('.');
+        String f = Long.toString(fraction);
+        for (int i = f.length(); i < decimals; i++) {
+            sb.append('0');
+        }
+        return sb.append(f).toString();
+    }
+
+    @Override
+    public int compareTo(Money m) {
+        return Long.compare(m_units, m.m_units);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        return o instanceof Money && ((Money) o).m_units == m_units;
+    }
+
+    @Override
+    public int hashCode() {
+        return Long.hashCode(m_units);
+    }
+}
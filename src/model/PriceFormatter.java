@@ -0,0 +1,103 @@
+package model;
+
+/**
+ * Formats amounts as prices with a fixed valuta sign and separators, e.g.
+ * "€  1 234,50". The characters around the digits are prepared once, and the
+ * digits are written between them by the same routine as Money.format.
+ *
+ * Most screens show the same prices many times, so the formatter keeps the
+ * last string of each amount in a small cache, indexed by a hash of the
+ * amount. Looking up a cached price creates no objects. The cache holds
+ * immutable entries, so the formatter can be used from any thread.
+ *
+ * @author Anaïs Ools
+ */
+public class PriceFormatter {
+
+    // Members & constructors --------------------------------------------------
+    private static final int CACHE_SIZE = 1024; // a power of two
+
+    private final char m_decimalSeparator;
+    private final char m_groupingSeparator;
+    private final char[] m_prefix;
+    private final char[] m_suffix;
+    private final Entry[] m_cache;
+
+    /**
+     * Create a formatter.
+     *
+     * @param sign the valuta sign
+     * @param signInFront whether the sign comes before the amount
+     * @param decimalSeparator the character between the whole part and the
+     * decimals
+     * @param groupingSeparator the character between each group of thousands,
+     * or 0 to not group the thousands
+     */
+    public PriceFormatter(String sign, boolean signInFront, char decimalSeparator, char groupingSeparator) {
+        m_decimalSeparator = decimalSeparator;
+        m_groupingSeparator = groupingSeparator;
+        m_prefix = signInFront ? (sign + "  ").toCharArray() : new char[0];
+        m_suffix = signInFront ? new char[0] : (" " + sign).toCharArray();
+        m_cache = new Entry[CACHE_SIZE];
+    }
+
+    // Private functions -------------------------------------------------------
+    private static int slot(long cents) {
+        long h = cents * 0x9E3779B97F4A7C15L; // spread nearby amounts
+        return (int) (h >>> 40) & (CACHE_SIZE - 1);
+    }
+
+    /**
+     * Write a price into a new string.
+     *
+     * @param units the amount in minor units
+     * @return
+     */
+    private String build(long units) {
+        char[] buffer = new char[32 + m_prefix.length + m_suffix.length];
+        int end = buffer.length - m_suffix.length;
+        System.arraycopy(m_suffix, 0, buffer, end, m_suffix.length);
+        int pos = Money.format(units, buffer, end, m_decimalSeparator, m_groupingSeparator) - m_prefix.length;
+        System.arraycopy(m_prefix, 0, buffer, pos, m_prefix.length);
+        return new String(buffer, pos, buffer.length - pos);
+    }
+
+    // Public functions --------------------------------------------------------
+    /**
+     * Format an amount, rounded half away from zero to two decimals.
+     *
+     * @param units the amount in minor units (see Money)
+     * @return
+     */
+    public String format(long units) {
+        long cents = units < 0 ? -((-units + Money.SCALE / 200) / (Money.SCALE / 100)) : (units + Money.SCALE / 200) / (Money.SCALE / 100);
+        int slot = slot(cents);
+        Entry first = m_cache[slot];
+        if (first != null && first.m_cents == cents) {
+            return first.m_text;
+        }
+        Entry second = m_cache[slot ^ 1]; // every amount can use two slots
+        if (second != null && second.m_cents == cents) {
+            return second.m_text;
+        }
+        String text = build(units);
+        m_cache[first == null || second != null ? slot : slot ^ 1] = new Entry(cents, text);
+        return text;
+    }
+
+    public String format(Money price) {
+        return format(price.getUnits());
+    }
+
+    // Private classes ---------------------------------------------------------
+    private static class Entry {
+
+        private final long m_cents;
+        private final String m_text;
+
+        private Entry(long cents, String text) {
+            m_cents = cents;
+            m_text = text;
+        }
+    }
+}
@@ -2,203 +2,324 @@ package model;
 
 import data.XMLFileHandler;
 import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 import javafx.util.Pair;
 
 /**
  * Singleton class: only one instance exists. This class loads the settings,
- * using the XMLFileParser class. When the settings are changed, they are
- * written to the settings file immediately.
+ * using the XMLFileParser class. The settings are kept in memory, by SETTING.
+ * When they are changed, they are written to the settings file by a background
+ * thread: changes made shortly after each other are written at once. Only that
+ * thread writes the file; a write that fails is tried again later.
  *
  * @author Anaïs Ools
  */
 public class Settings {
 
+    /**
+     * All settings, with their key in the settings file and their default
+     * value. The default value also decides the type of the setting.
+     */
+    public enum SETTING {
+
+        MAXIMIZE_WINDOW("maximizeWindow", true),
+        AUTO_SAVE("autoSave", false),
+        SAVE_ON_CLOSE("saveOnClose", true),
+        MINIMIZE_TO_TRAY("minimizeToTray", false),
+        VALUTA_SIGN("valutaSign", "€"),
+        VALUTA_SIGN_IN_FRONT("valutaSignInFront", true),
+        VALUTA_COMMA_SEPARATOR("valutaCommaSeparator", true),
+        VALUTA_THOUSAND_SEPARATOR("valutaThousandSeparator", true),
+        PRICES_VISIBLE("pricesVisible", true),
+        SHOW_HIDDEN_VALUES("showHiddenValues", true),
+        USE_DATE_ADDED("useDateAdded", false),
+        HIDE_EXCEPTIONAL("hideExceptional", false),
+        SAVE_FILE_LOCATION("saveFileLocation", System.getenv("APPDATA") + "\\GhostApps\\BoekhoudingApp\\"),
+        HIGHER_ROWS("higherRows", false);
+
+        private final String m_key;
+        private final Object m_default;
+
+        private SETTING(String key, Object defaultValue) {
+            m_key = key;
+            m_default = defaultValue;
+        }
+
+        public String getKey() {
+            return m_key;
+        }
+
+        public Object getDefault() {
+            return m_default;
+        }
+    };
+
     // Members -----------------------------------------------------------------
-    private ArrayList<Pair<String, Object>> m_settings;
-    private ArrayList<Pair<String, Object>> m_fields;
+    private static final int WRITE_DELAY = 500; // in milliseconds
+    private static final int RETRY_DELAY = 10000; // in milliseconds, after a failed write
+    private static final EnumSet<SETTING> VALUTA_SETTINGS = EnumSet.of(SETTING.VALUTA_SIGN, SETTING.VALUTA_SIGN_IN_FRONT,
+            SETTING.VALUTA_COMMA_SEPARATOR, SETTING.VALUTA_THOUSAND_SEPARATOR);
+
+    private EnumMap<SETTING, Object> m_settings;
+    private ScheduledExecutorService m_writer;
+    private boolean m_dirty; // changed since the last write
+    private long m_changes; // the number of changes, to tell if they were all written
+    private PriceFormatter m_priceFormatter;
 
     // Private functions -------------------------------------------------------
     /**
-     * Create a new XMLFileParser object.
+     * Load the settings, and complete them with the defaults.
      */
     private void init() {
-        // set defaults
-        m_fields = new ArrayList();
-        put(m_fields, "maximizeWindow", true);
-        put(m_fields, "autoSave", false);
-        put(m_fields, "saveOnClose", true);
-        put(m_fields, "minimizeToTray", false);
-        put(m_fields, "valutaSign", "€");
-        put(m_fields, "valutaSignInFront", true);
-        put(m_fields, "valutaCommaSeparator", true);
-        put(m_fields, "valutaThousandSeparator", true);
-        put(m_fields, "pricesVisible", true);
-        put(m_fields, "showHiddenValues", true);
-        put(m_fields, "useDateAdded", false);
-        put(m_fields, "hideExceptional", false);
-        put(m_fields, "saveFileLocation", System.getenv("APPDATA") + "\\GhostApps\\BoekhoudingApp\\");
-        put(m_fields, "higherRows", false);
+        m_settings = new EnumMap(SETTING.class);
+        m_writer = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "Settings writer");
+            t.setDaemon(true);
+            return t;
+        });
 
         // load settings
-        m_settings = new ArrayList();
         loadFromFile();
 
         // if setting was not loaded: complete with defaults
-        for (Pair<String, Object> p : m_fields) {
-            if (get(m_settings, p.getKey()) == null) {
-                put(m_settings, p.getKey(), p.getValue());
+        for (SETTING setting : SETTING.values()) {
+            if (!m_settings.containsKey(setting)) {
+                m_settings.put(setting, setting.getDefault());
+                m_dirty = true;
             }
         }
+        if (m_dirty) {
+            scheduleWrite();
+        }
+        createPriceFormatter();
+    }
 
-        writeToFile();
+    /**
+     * Create the formatter for prices from the valuta settings.
+     */
+    private void createPriceFormatter() {
+        m_priceFormatter = new PriceFormatter(getString(SETTING.VALUTA_SIGN), getBoolean(SETTING.VALUTA_SIGN_IN_FRONT),
+                getBoolean(SETTING.VALUTA_COMMA_SEPARATOR) ? ',' : '.', getBoolean(SETTING.VALUTA_THOUSAND_SEPARATOR) ? ' ' : 0);
     }
 
     private void loadFromFile() {
+        HashMap<String, SETTING> byKey = new HashMap();
+        for (SETTING setting : SETTING.values()) {
+            byKey.put(setting.getKey(), setting);
+        }
         XMLFileHandler xfh = new XMLFileHandler("settings.xml");
         xfh.loadSettings();
         if (xfh.success()) {
             for (Pair<String, Object> p : xfh.getContent()) {
-                put(m_settings, p.getKey(), p.getValue());
+                SETTING setting = byKey.get(p.getKey());
+                Object value = setting == null ? null : parse(setting, p.getValue());
+                if (value != null) {
+                    m_settings.put(setting, value);
+                }
             }
         }
     }
 
+    /**
+     * Convert a value from the settings file to the type of a setting.
+     *
+     * @param setting
+     * @param o
+     * @return the value, or null if it has the wrong type
+     */
+    private static Object parse(SETTING setting, Object o) {
+        if (o == null || setting.getDefault().getClass().isInstance(o)) {
+            return o;
+        } else if (setting.getDefault() instanceof Boolean && o instanceof String) {
+            return Boolean.parseBoolean((String) o);
+        }
+        return null;
+    }
+
+    /**
+     * Write the settings to the file in a while, unless a write is already
+     * planned.
+     */
+    private void scheduleWrite() {
+        m_writer.schedule(() -> writeToFile(), WRITE_DELAY, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Write the settings to the file if they changed since the last write.
+     * Only runs on the writer thread. The settings stay marked as changed
+     * until they are written: changes made during the write are written
+     * next, and a failed write is tried again.
+     */
     private void writeToFile() {
+        ArrayList<Pair<String, Object>> list = new ArrayList();
+        long changes;
+        synchronized (this) {
+            if (!m_dirty) {
+                return; // written already
+            }
+            changes = m_changes;
+            for (Map.Entry<SETTING, Object> e : m_settings.entrySet()) {
+                list.add(new Pair(e.getKey().getKey(), e.getValue()));
+            }
+        }
+        boolean written = false;
         try {
             XMLFileHandler xfh = new XMLFileHandler("settings.xml");
             if (xfh.success()) {
-                xfh.saveSettings(m_settings);
+                xfh.saveSettings(list);
+                written = xfh.success();
             }
         } catch (Exception e) {
         }
-    }
-
-    private Object get(ArrayList<Pair<String, Object>> list, String key) {
-        for (Pair<String, Object> p : list) {
-            if (p.getKey().equals(key)) {
-                return p.getValue();
+        synchronized (this) {
+            if (!written) {
+                m_writer.schedule(() -> writeToFile(), RETRY_DELAY, TimeUnit.MILLISECONDS);
+            } else if (m_changes == changes) {
+                m_dirty = false;
+            } else {
+                scheduleWrite(); // changed during the write
             }
         }
-        return null;
     }
 
-    private void put(ArrayList<Pair<String, Object>> list, String key, Object o) {
-        for (int i = 0; i < list.size(); i++) {
-            Pair<String, Object> p = list.get(i);
-            if (p.getKey().equals(key)) {
-                list.remove(i);
-                list.add(i, new Pair(key, o));
-                writeToFile();
+    /**
+     * Change a setting and schedule writing it.
+     *
+     * @param setting
+     * @param value
+     */
+    private void put(SETTING setting, Object value) {
+        synchronized (this) {
+            if (Objects.equals(m_settings.get(setting), value)) {
                 return;
             }
+            m_settings.put(setting, value);
+            m_changes++;
+            if (!m_dirty) {
+                m_dirty = true;
+                scheduleWrite();
+            }
+        }
+        if (VALUTA_SETTINGS.contains(setting)) {
+            createPriceFormatter();
         }
-        list.add(new Pair(key, o));
-        writeToFile();
     }
 
-    private boolean getBoolean(String field) {
-        Object o = get(m_settings, field);
-        if (o == null) {
-            return (boolean) get(m_fields, field);
-        } else if (o.getClass().equals(Boolean.class)) {
-            return (boolean) get(m_settings, field);
-        } else if (o.getClass().equals(String.class)) {
-            return Boolean.parseBoolean((String) o);
-        } else {
-            return (boolean) get(m_fields, field);
-        }
+    private synchronized boolean getBoolean(SETTING setting) {
+        return (boolean) m_settings.get(setting);
     }
 
-    private String getString(String field) {
-        Object o = get(m_settings, field);
-        if (o == null) {
-            return (String) get(m_fields, field);
-        } else if (o.getClass().equals(String.class)) {
-            return (String) o;
-        } else {
-            return (String) get(m_fields, field);
-        }
+    private synchronized String getString(SETTING setting) {
+        return (String) m_settings.get(setting);
     }
 
     // Public functions --------------------------------------------------------
+    /**
+     * Write changed settings to the file right away, e.g. before the
+     * application quits. The write runs on the writer thread, after a write
+     * that is busy, and this function waits until it is done.
+     */
+    public void flush() {
+        try {
+            m_writer.submit(() -> writeToFile()).get();
+        } catch (InterruptedException | ExecutionException ex) {
+            System.out.println("Writing the settings failed: " + ex.getMessage());
+        }
+    }
+
     public boolean getMaximizeWindow() {
-        return getBoolean("maximizeWindow");
+        return getBoolean(SETTING.MAXIMIZE_WINDOW);
     }
 
     public void setMaximizeWindow(boolean b) {
-        put(m_settings, "maximizeWindow", b);
+        put(SETTING.MAXIMIZE_WINDOW, b);
     }
 
     public boolean getAutoSave() {
-        return getBoolean("autoSave");
+        return getBoolean(SETTING.AUTO_SAVE);
     }
 
     public void setAutoSave(boolean b) {
-        put(m_settings, "autoSave", b);
+        put(SETTING.AUTO_SAVE, b);
     }
 
     public boolean getSaveOnClose() {
-        return getBoolean("saveOnClose");
+        return getBoolean(SETTING.SAVE_ON_CLOSE);
     }
 
     public void setSaveOnClose(boolean b) {
-        put(m_settings, "saveOnClose", b);
+        put(SETTING.SAVE_ON_CLOSE, b);
     }
 
     public boolean getMinimizeToTray() {
-        return getBoolean("minimizeToTray");
+        return getBoolean(SETTING.MINIMIZE_TO_TRAY);
     }
 
     public void setMinimizeToTray(boolean b) {
-        put(m_settings, "minimizeToTray", b);
+        put(SETTING.MINIMIZE_TO_TRAY, b);
     }
 
     public boolean getPricesVisible() {
-        return getBoolean("pricesVisible");
+        return getBoolean(SETTING.PRICES_VISIBLE);
     }
 
     public void setPricesVisible(boolean b) {
-        put(m_settings, "pricesVisible", b);
+        put(SETTING.PRICES_VISIBLE, b);
     }
 
     public boolean getShowHiddenValues() {
-        return getBoolean("showHiddenValues");
+        return getBoolean(SETTING.SHOW_HIDDEN_VALUES);
     }
 
     public void setShowHiddenValues(boolean b) {
-        put(m_settings, "showHiddenValues", b);
+        put(SETTING.SHOW_HIDDEN_VALUES, b);
     }
 
     public boolean getUseDateAdded() {
-        return getBoolean("useDateAdded");
+        return getBoolean(SETTING.USE_DATE_ADDED);
     }
 
     public void setUseDateAdded(boolean b) {
-        put(m_settings, "useDateAdded", b);
+        put(SETTING.USE_DATE_ADDED, b);
     }
 
     public boolean getHideExceptional() {
-        return getBoolean("hideExceptional");
+        return getBoolean(SETTING.HIDE_EXCEPTIONAL);
     }
 
     public void setHideExceptional(boolean b) {
-        put(m_settings, "hideExceptional", b);
+        put(SETTING.HIDE_EXCEPTIONAL, b);
     }
 
     public String getSaveFileLocation() {
-        return getString("saveFileLocation");
+        return getString(SETTING.SAVE_FILE_LOCATION);
     }
 
     public void setSaveFileLocation(String s) {
-        put(m_settings, "saveFileLocation", s);
+        put(SETTING.SAVE_FILE_LOCATION, s);
     }
 
     public boolean getHigherRows() {
-        return getBoolean("higherRows");
+        return getBoolean(SETTING.HIGHER_ROWS);
     }
 
     public void setHigherRows(boolean b) {
-        put(m_settings, "higherRows", b);
+        put(SETTING.HIGHER_ROWS, b);
+    }
+
+    /**
+     * Converts an amount to a valuta representation, according to the user's
+     * settings. Uses a formatter that is only created again when the valuta
+     * settings change.
+     *
+     * @param price the amount to convert
+     * @return the valuta string representation of the amount
+     */
+    public String convertPriceToString(Money price) {
+        return m_priceFormatter.format(price);
     }
 
     /**
@@ -209,36 +330,20 @@ public class Settings {
      * @return the valuta string representation of the number
      */
     public String convertPriceToString(double price) {
-        String p = String.format("%,10.2f", price).trim();
-        if (getBoolean("valutaThousandSeparator")) {
-            p = p.replace(".", " ");
-        }
-        if (getBoolean("valutaCommaSeparator")) {
-            p = p.replace(".", ",");
-        } else {
-            p = p.replace(",", ".");
-        }
-        if (getBoolean("valutaSignInFront")) {
-            p = getString("valutaSign") + "  " + p;
-        } else {
-            p = p + " " + getString("valutaSign");
-        }
-        return p;
+        return m_priceFormatter.format(Math.round(price * Money.SCALE));
     }
 
     /**
-     * Converts a valuta representation of a number to the actual number.
+     * Converts a valuta representation of an amount to the actual amount.
      *
      * @param price the string to convert
-     * @return the value of the string
+     * @return the value of the string, zero if it could not be parsed
      */
-    public double convertPriceToDouble(String price) {
-        price = price.replaceAll(",", ".");
-        price = price.replaceAll("[^\\d.-]", "");
+    public Money convertPriceToMoney(String price) {
         try {
-            return Double.parseDouble(price);
+            return Money.parse(price);
         } catch (NumberFormatException nfe) {
-            return 0;
+            return Money.ZERO;
         }
     }
 
@@ -1,6 +1,7 @@
 package model;
 
 import data.Data;
+import java.time.LocalDate;
 import java.util.*;
 
 /**
@@ -13,28 +14,28 @@ public class Transaction extends Observable {
     // required
     private final long m_id;
     private String m_description;
-    private Double m_price;
+    private Money m_price;
     private String m_category;
     private CategoryString m_transactor;
-    private Date m_dateAdded;
+    private int m_dateAdded = EpochDay.NONE;
     private CategoryString m_paymentMethod;
 
     // optional
-    private Date m_datePaid;
+    private int m_datePaid = EpochDay.NONE;
     private boolean m_exceptional;
     private boolean m_hidden;
-    private Date m_hiddenDate;
+    private int m_hiddenDate = EpochDay.NONE;
 
     // optional: payback
     private boolean m_payback;
     private CategoryString m_payBackTransactor;
-    private Double m_paybackPrice;
+    private Money m_paybackPrice;
 
     // optional: job
     private boolean m_isJob;
     private Double m_jobHours;
-    private Double m_jobWage;
-    private Date m_jobDate;
+    private Money m_jobWage;
+    private int m_jobDate = EpochDay.NONE;
 
     public enum TRANSACTIONFIELD {
 
@@ -56,10 +57,12 @@ public class Transaction extends Observable {
 
     /**
      * Tell observers that the data has changed.
+     *
+     * @param field the field that changed
      */
-    private void notifyObserversOfChange() {
+    private void notifyObserversOfChange(TRANSACTIONFIELD field) {
         this.setChanged();
-        this.notifyObservers();
+        this.notifyObservers(field);
     }
 
     // Public functions --------------------------------------------------------
@@ -82,6 +85,38 @@ public class Transaction extends Observable {
         return m_id;
     }
 
+    /**
+     * Check if the transaction is hidden on a certain day: it is marked as
+     * hidden and its hidden date is not set or still to come.
+     *
+     * @param day an epoch day
+     * @return
+     */
+    public boolean isHiddenOn(int day) {
+        return m_hidden && (m_hiddenDate == EpochDay.NONE || m_hiddenDate > day);
+    }
+
+    /**
+     * Get a boolean field without boxing it.
+     *
+     * @param field EXCEPTIONAL, PAYBACK, JOB or HIDDEN
+     * @return the value, or false if the field is not a boolean field
+     */
+    public boolean getFlag(TRANSACTIONFIELD field) {
+        switch (field) {
+            case EXCEPTIONAL:
+                return m_exceptional;
+            case PAYBACK:
+                return m_payback;
+            case JOB:
+                return m_isJob;
+            case HIDDEN:
+                return m_hidden;
+            default:
+                return false;
+        }
+    }
+
     /**
      * Get a certain field based in the TRANSACTIONFIELD-type provided.
      *
@@ -99,9 +134,9 @@ public class Transaction extends Observable {
             case TRANSACTOR:
                 return m_transactor;
             case DATE_ADDED:
-                return m_dateAdded;
+                return EpochDay.toLocalDate(m_dateAdded);
             case DATE_PAID:
-                return m_datePaid;
+                return EpochDay.toLocalDate(m_datePaid);
             case PAYMENT_METHOD:
                 return m_paymentMethod;
             case EXCEPTIONAL:
@@ -119,19 +154,42 @@ public class Transaction extends Observable {
             case JOB_WAGE:
                 return m_jobWage;
             case JOB_DATE:
-                return m_jobDate;
+                return EpochDay.toLocalDate(m_jobDate);
             case HIDDEN:
                 return m_hidden;
             case HIDDEN_DATE:
-                return m_hiddenDate;
+                return EpochDay.toLocalDate(m_hiddenDate);
             default:
                 return null;
         }
     }
 
+    /**
+     * Get a date field as an epoch day, without creating any objects.
+     *
+     * @param field one of the date fields
+     * @return the epoch day, or EpochDay.NONE if the date is not set or the
+     * field is not a date field
+     */
+    public int getEpochDay(TRANSACTIONFIELD field) {
+        switch (field) {
+            case DATE_ADDED:
+                return m_dateAdded;
+            case DATE_PAID:
+                return m_datePaid;
+            case JOB_DATE:
+                return m_jobDate;
+            case HIDDEN_DATE:
+                return m_hiddenDate;
+            default:
+                return EpochDay.NONE;
+        }
+    }
+
     /**
      * Set a certain field to the provided value. If the value is not the
-     * correct class, nothing will be set.
+     * correct class, nothing will be set. Observers are only notified if the
+     * value differs from the current one.
      *
      * @param field
      * @param value
@@ -141,12 +199,15 @@ public class Transaction extends Observable {
         if (value != null && !value.getClass().equals(preferredType)) {
             return; // incompatible types
         }
+        if (Objects.equals(get(field), value)) {
+            return; // nothing changes, so don't notify
+        }
         switch (field) {
             case DESCRIPTION:
                 m_description = (String) value;
                 break;
             case PRICE:
-                m_price = (Double) value;
+                m_price = (Money) value;
                 break;
             case CATEGORY:
                 m_category = (String) value;
@@ -155,10 +216,10 @@ public class Transaction extends Observable {
                 m_transactor = (CategoryString) value;
                 break;
             case DATE_ADDED:
-                m_dateAdded = (Date) value;
+                m_dateAdded = EpochDay.of((LocalDate) value);
                 break;
             case DATE_PAID:
-                m_datePaid = (Date) value;
+                m_datePaid = EpochDay.of((LocalDate) value);
                 break;
             case PAYMENT_METHOD:
                 m_paymentMethod = (CategoryString) value;
@@ -177,7 +238,7 @@ public class Transaction extends Observable {
                 m_payBackTransactor = (CategoryString) value;
                 break;
             case PAYBACK_PRICE:
-                m_paybackPrice = (Double) value;
+                m_paybackPrice = (Money) value;
                 break;
             case JOB:
                 if (value != null) {
@@ -188,10 +249,10 @@ public class Transaction extends Observable {
                 m_jobHours = (Double) value;
                 break;
             case JOB_WAGE:
-                m_jobWage = (Double) value;
+                m_jobWage = (Money) value;
                 break;
             case JOB_DATE:
-                m_jobDate = (Date) value;
+                m_jobDate = EpochDay.of((LocalDate) value);
                 break;
             case HIDDEN:
                 if (value != null) {
@@ -199,9 +260,9 @@ public class Transaction extends Observable {
                 }
                 break;
             case HIDDEN_DATE:
-                m_hiddenDate = (Date) value;
+                m_hiddenDate = EpochDay.of((LocalDate) value);
         }
-        notifyObserversOfChange();
+        notifyObserversOfChange(field);
     }
 
     /**
@@ -219,9 +280,10 @@ public class Transaction extends Observable {
             case CATEGORY:
                 return String.class;
             case PRICE:
-            case JOB_HOURS:
             case JOB_WAGE:
             case PAYBACK_PRICE:
+                return Money.class;
+            case JOB_HOURS:
                 return Double.class;
             case TRANSACTOR:
             case PAYMENT_METHOD:
@@ -231,7 +293,7 @@ public class Transaction extends Observable {
             case DATE_PAID:
             case JOB_DATE:
             case HIDDEN_DATE:
-                return Date.class;
+                return LocalDate.class;
             case EXCEPTIONAL:
             case PAYBACK:
             case JOB:
@@ -1,13 +1,21 @@
 package view;
 
+import data.ChangeSet;
 import data.Data;
+import data.Dependency;
+import data.QueryCache;
 import data.QueryableList;
+import data.RangeSums;
 import dialogs.AddEditTransaction;
 import java.awt.*;
 import java.awt.event.ActionEvent;
 import java.util.*;
+import java.util.concurrent.ExecutionException;
 import javafx.util.Pair;
 import javax.swing.*;
+import javax.swing.event.DocumentEvent;
+import javax.swing.event.DocumentListener;
+import model.EpochDay;
 import model.Settings;
 import model.Transaction;
 import model.Transaction.TRANSACTIONFIELD;
@@ -17,15 +25,19 @@ import view.swingextensions.CustomGridBag;
 /**
  * This panel fills one of the tabs of the MainWindow. It contains a table with
  * all transactions on the left, a yearly overview on the right and "add" and
- * "edit" buttons on the bottom.
+ * "edit" buttons on the bottom. The search field on top searches the
+ * transactions of all years.
  *
  * It asks for the data itself, but loads this data only in the constructor.
+ * Refreshing the table and the overview runs on a background thread.
  *
  * @author Anaïs Ools
  */
 public class HistoryPanel extends JPanel implements Observer {
 
     // Members & constructor ---------------------------------------------------
+    private static final int MAX_INCREMENTAL_CHANGES = 100; // more changes refresh the whole table
+
     private final JFrame m_parentFrame; // needed for opening dialogs that block the frame
 
     private TransactionTable m_tablePanel;
@@ -34,10 +46,14 @@ public class HistoryPanel extends JPanel implements Observer {
     private JPanel m_topPanel;
     private JLabel m_yearLabel;
     private int m_year;
-    private QueryableList m_displayedData;
+    private RefreshWorker m_refreshWorker;
+    private Object m_dependencyKey; // what the registered dependency selects
 
     private JButton m_previousYearButton;
     private JButton m_nextYearButton;
+    private JCheckBox m_allYearsBox;
+    private JLabel m_searchLabel;
+    private JTextField m_searchField;
 
     private JButton m_addButton;
     private JButton m_editButton;
@@ -47,15 +63,12 @@ public class HistoryPanel extends JPanel implements Observer {
     public HistoryPanel(JFrame parentFrame) {
         m_parentFrame = parentFrame;
 
-        // make sure view changes when data changes
-        Data.GetInstance().addAsObserver(this);
-
         createComponents();
         setPreferences();
         setActions();
         createUI();
 
-        // subset data to current year
+        // subset data to current year, this also registers for data changes
         Calendar cal = Calendar.getInstance();
         setYear(cal.get(Calendar.YEAR));
 
@@ -84,6 +97,9 @@ public class HistoryPanel extends JPanel implements Observer {
         m_yearLabel = new JLabel();
         m_previousYearButton = new JButton("<");
         m_nextYearButton = new JButton(">");
+        m_allYearsBox = new JCheckBox("Show all years");
+        m_searchLabel = new JLabel();
+        m_searchField = new JTextField(20);
 
         // year panel
         m_yearPanel = new OverviewPanel(this);
@@ -103,6 +119,9 @@ public class HistoryPanel extends JPanel implements Observer {
         m_yearLabel.setFont(new Font("Serif", Font.PLAIN, 36));
         m_previousYearButton.setBackground(Color.darkGray);
         m_nextYearButton.setBackground(Color.darkGray);
+        Image searchIcon = new ImageIcon(getClass().getResource("/img/ZoekenIcon.png")).getImage();
+        m_searchLabel.setIcon(new ImageIcon(searchIcon.getScaledInstance(20, 20, Image.SCALE_SMOOTH)));
+        m_searchField.setToolTipText("Search all years by description, category, transactor or payment method");
         m_addButton.setBackground(Color.darkGray);
         m_editButton.setBackground(Color.darkGray);
         m_deleteButton.setBackground(Color.darkGray);
@@ -119,6 +138,24 @@ public class HistoryPanel extends JPanel implements Observer {
         m_nextYearButton.addActionListener((ActionEvent ae) -> {
             this.setYear(m_year + 1);
         });
+        m_allYearsBox.addActionListener((ActionEvent ae) -> {
+            update(null, null);
+        });
+        m_searchField.getDocument().addDocumentListener(new DocumentListener() {
+            @Override
+            public void insertUpdate(DocumentEvent de) {
+                update(null, null);
+            }
+
+            @Override
+            public void removeUpdate(DocumentEvent de) {
+                update(null, null);
+            }
+
+            @Override
+            public void changedUpdate(DocumentEvent de) {
+            }
+        });
         m_addButton.addActionListener((ActionEvent ae) -> {
             AddEditTransaction dialog = new AddEditTransaction(m_parentFrame);
             dialog.showDialog();
@@ -166,6 +203,11 @@ public class HistoryPanel extends JPanel implements Observer {
         c.add(m_topPanel, m_previousYearButton, 0, 0);
         c.add(m_topPanel, m_yearLabel, 1, 0);
         c.add(m_topPanel, m_nextYearButton, 2, 0);
+        c.add(m_topPanel, m_allYearsBox, 3, 0);
+        c.setInsets(0, 0, 40, 5);
+        c.add(m_topPanel, m_searchLabel, 4, 0);
+        c.setInsets(0, 0, 0, 0);
+        c.add(m_topPanel, m_searchField, 5, 0);
 
         // ButtonPanel
         c.setInsets(20, 20, 40, 40);
@@ -194,38 +236,236 @@ public class HistoryPanel extends JPanel implements Observer {
     private void setYear(int year) {
         m_year = year;
         m_yearLabel.setText(Integer.toString(m_year));
-        update(null, null);
+        declareDependency();
+        refresh(true);
+    }
+
+    /**
+     * Tell Data which transactions this panel shows, so it is only notified
+     * of the changes to them: the transactions of the year, or all of them
+     * when searching or showing all years. Nothing is registered if that has
+     * not changed.
+     */
+    private void declareDependency() {
+        Dependency dependency;
+        Object key;
+        if (m_allYearsBox.isSelected() || !m_searchField.getText().trim().isEmpty()) {
+            dependency = null;
+            key = "all";
+        } else {
+            TRANSACTIONFIELD field = Settings.GetInstance().getUseDateAdded() ? TRANSACTIONFIELD.DATE_ADDED : TRANSACTIONFIELD.DATE_PAID;
+            dependency = Dependency.year(field, m_year);
+            key = Arrays.asList(field, m_year);
+        }
+        if (key.equals(m_dependencyKey)) {
+            return; // e.g. another search keystroke
+        }
+        m_dependencyKey = key;
+        Data.GetInstance().addAsObserver(this, dependency == null ? Dependency.all() : dependency);
+    }
+
+    /**
+     * Refresh the overview and, if requested, the table. The overview is read
+     * from the range sums of Data, and rows that were calculated before for
+     * the same year and settings are taken from the query cache; both are
+     * shown right away. Otherwise a RefreshWorker waits for the range sums to
+     * be built, and filters the transactions that are looked up in the
+     * indexes. A refresh that is still running is cancelled, since its result
+     * would be outdated.
+     *
+     * @param refreshTable
+     */
+    private void refresh(boolean refreshTable) {
+        if (m_refreshWorker != null) {
+            m_refreshWorker.cancel(true);
+            m_refreshWorker = null;
+        }
+        RefreshWorker worker = new RefreshWorker(refreshTable);
+        if (worker.isCached()) {
+            worker.show();
+        } else {
+            m_refreshWorker = worker;
+            worker.execute();
+        }
+    }
+
+    /**
+     * Check if a transaction belongs in the table of the current year, or of
+     * all years.
+     *
+     * @param t
+     * @return
+     */
+    private boolean isShownInTable(Transaction t) {
+        TRANSACTIONFIELD field = Settings.GetInstance().getUseDateAdded() ? TRANSACTIONFIELD.DATE_ADDED : TRANSACTIONFIELD.DATE_PAID;
+        int day = t.getEpochDay(field);
+        if (!m_allYearsBox.isSelected() && (day == EpochDay.NONE || EpochDay.year(day) != m_year)) {
+            return false;
+        }
+        return Settings.GetInstance().getShowHiddenValues() || !t.isHiddenOn(EpochDay.today());
     }
 
     // Public functions --------------------------------------------------------
     /**
-     * Update when the data changes.
+     * Update when the data changes. A small set of changes is applied to the
+     * table right away, unless the table is being refreshed as a whole.
      *
      * @param o
      * @param o1
      */
     @Override
     public void update(Observable o, Object o1) {
-        // Get by date added or paid
-        if (Settings.GetInstance().getUseDateAdded()) {
-            m_displayedData = Data.GetInstance().getTransactions().selectDateAddedByYear(m_year);
+        if (o1 == Data.EVENT.SAVED) {
+            return; // nothing to show
+        }
+        if (o1 == null) { // the panel itself changed what it shows
+            declareDependency();
+        }
+        boolean tableRefreshing = m_refreshWorker != null && m_refreshWorker.m_refreshesTable;
+        if (o1 instanceof ChangeSet && ((ChangeSet) o1).size() <= MAX_INCREMENTAL_CHANGES
+                && m_searchField.getText().trim().isEmpty() && !tableRefreshing) {
+            m_tablePanel.applyChanges((ChangeSet) o1, t -> isShownInTable(t));
+            refresh(false);
         } else {
-            m_displayedData = Data.GetInstance().getTransactions().selectDatePaidByYear(m_year);
+            refresh(true);
         }
+    }
 
-        // Update the table
-        if (Settings.GetInstance().getShowHiddenValues()) {
-            m_tablePanel.setData(m_displayedData.toList());
-        } else {
-            m_tablePanel.setData(m_displayedData.selectNonhidden().toList());
+    // Private classes ---------------------------------------------------------
+    /**
+     * Calculates the rows of the table on a background thread, and shows them
+     * together with the overview of the year when done. The rows are stored in
+     * the query cache if they are not a search result.
+     */
+    private class RefreshWorker extends SwingWorker<Void, Void> {
+
+        private final QueryCache m_cache;
+        private final int m_workerYear;
+        private final boolean m_useDateAdded;
+        private final boolean m_showHidden;
+        private final boolean m_hideExceptional;
+        private final boolean m_refreshesTable;
+        private final int m_today;
+
+        private final RangeSums m_sums;
+        private OverviewPanel.Overview m_overview; // null until the range sums are built
+
+        private final Object m_rowsKey; // null if the rows are not cached
+        private final int m_rowsPartition;
+        private final long m_rowsVersion;
+        private ArrayList<Transaction> m_sourceRows;
+        private boolean m_sourceHasHidden;
+        private ArrayList<Transaction> m_rows;
+
+        /**
+         * Capture the parameters of the refresh and look up the results in the
+         * cache. If the rows are not cached, the transactions they are
+         * selected from are copied, since the list may change while the worker
+         * runs: the transactions of the year or the search results, looked up
+         * in the indexes, or all transactions. The hidden ones are left out in
+         * the background. Must be created on the event thread.
+         *
+         * @param refreshTable
+         */
+        private RefreshWorker(boolean refreshTable) {
+            m_cache = Data.GetInstance().getQueryCache();
+            m_workerYear = m_year;
+            m_useDateAdded = Settings.GetInstance().getUseDateAdded();
+            m_showHidden = Settings.GetInstance().getShowHiddenValues();
+            m_hideExceptional = Settings.GetInstance().getHideExceptional();
+            m_refreshesTable = refreshTable;
+            m_today = EpochDay.today();
+
+            QueryableList transactions = Data.GetInstance().getTransactions();
+            TRANSACTIONFIELD dateField = m_useDateAdded ? TRANSACTIONFIELD.DATE_ADDED : TRANSACTIONFIELD.DATE_PAID;
+            m_sums = Data.GetInstance().getRangeSums(dateField);
+            if (m_sums.isBuilt()) {
+                m_overview = OverviewPanel.calculate(m_sums, m_year, m_hideExceptional);
+            }
+
+            String search = m_searchField.getText().trim();
+            if (!refreshTable || !search.isEmpty()) {
+                m_rowsKey = null;
+                m_rowsPartition = m_year;
+            } else if (m_allYearsBox.isSelected()) {
+                m_rowsKey = Arrays.asList("rows", "all years", m_showHidden, m_today);
+                m_rowsPartition = QueryCache.ALL;
+            } else {
+                m_rowsKey = Arrays.asList("rows", m_year, m_useDateAdded, m_showHidden, m_today);
+                m_rowsPartition = m_year;
+            }
+            m_rowsVersion = m_cache.getVersion(m_rowsPartition);
+            if (m_rowsKey != null) {
+                m_rows = (ArrayList<Transaction>) m_cache.get(m_rowsKey, m_rowsPartition);
+            }
+            if (refreshTable && m_rows == null) {
+                m_sourceHasHidden = !m_showHidden;
+                if (!search.isEmpty()) {
+                    m_sourceRows = transactions.selectByIDs(Data.GetInstance().getSearchIndex().search(search)).toList();
+                } else if (m_allYearsBox.isSelected()) {
+                    m_sourceRows = new ArrayList(transactions.toList());
+                } else {
+                    m_sourceRows = transactions.selectByYear(dateField, m_year).toList(); // ordered by date
+                }
+            }
+        }
+
+        /**
+         * Check if all results were found in the cache.
+         *
+         * @return
+         */
+        private boolean isCached() {
+            return m_overview != null && (!m_refreshesTable || m_rows != null);
         }
 
-        // Update the year-widget
-        m_yearPanel.setYear(m_year);
-        QueryableList yearData = m_displayedData;
-        if (Settings.GetInstance().getHideExceptional()) {
-            yearData = yearData.selectUnexceptional();
+        /**
+         * Show the results. The table gets its own copy of the rows, since it
+         * changes them.
+         */
+        private void show() {
+            if (m_refreshesTable) {
+                m_tablePanel.setData(new ArrayList(m_rows));
+            }
+            m_yearPanel.setOverview(m_workerYear, m_overview);
+        }
+
+        @Override
+        protected Void doInBackground() throws InterruptedException {
+            if (m_overview == null) {
+                m_sums.awaitBuilt();
+                m_overview = OverviewPanel.calculate(m_sums, m_workerYear, m_hideExceptional);
+            }
+            if (m_refreshesTable && m_rows == null) {
+                ArrayList<Transaction> rows = m_sourceRows;
+                if (m_sourceHasHidden) {
+                    rows = new ArrayList(m_sourceRows.size());
+                    for (Transaction t : m_sourceRows) {
+                        if (!t.isHiddenOn(m_today)) {
+                            rows.add(t);
+                        }
+                    }
+                }
+                m_rows = rows;
+            }
+            return null;
+        }
+
+        @Override
+        protected void done() {
+            if (isCancelled() || m_refreshWorker != this) {
+                return; // outdated
+            }
+            m_refreshWorker = null;
+            try {
+                get();
+                if (m_rowsKey != null) {
+                    m_cache.put(m_rowsKey, m_rowsPartition, m_rowsVersion, m_rows);
+                }
+                show();
+            } catch (InterruptedException | ExecutionException ex) {
+                System.out.println("Refreshing the history failed: " + ex.getMessage());
+            }
         }
-        m_yearPanel.setData(yearData);
     }
 }
@@ -1,12 +1,14 @@
 package view;
 
 import data.Data;
+import data.Dependency;
 import view.swingextensions.CustomTable;
 import java.awt.*;
 import java.util.*;
 import javafx.util.Pair;
 import javax.swing.*;
 import model.CategoryString;
+import model.Money;
 import model.Transaction;
 import view.swingextensions.CustomGridBag;
 
@@ -25,7 +27,7 @@ public class JobsPanel extends JPanel implements Observer {
 
     // Members & constructor ---------------------------------------------------
     public JobsPanel() {
-        Data.GetInstance().addAsObserver(this);
+        Data.GetInstance().addAsObserver(this, Dependency.jobs());
 
         createComponents();
         setPreferences();
@@ -94,17 +96,17 @@ public class JobsPanel extends JPanel implements Observer {
             e.add(notNull(t.get(Transaction.TRANSACTIONFIELD.DATE_PAID)));
             Double hours = (Double) t.get(Transaction.TRANSACTIONFIELD.JOB_HOURS);
             e.add(notNull(hours));
-            Double wage = (Double) t.get(Transaction.TRANSACTIONFIELD.JOB_WAGE);
-            e.add(notNull(wage));
-            Double gross = (hours != null && wage != null) ? ((double) hours * (double) wage) : null;
+            Money wage = (Money) t.get(Transaction.TRANSACTIONFIELD.JOB_WAGE);
+            e.add(notNull((wage == null) ? null : wage.toDouble()));
+            Money gross = (hours != null && wage != null) ? wage.multiply(hours) : null;
             e.add(notNull(gross));
-            Double net = (Double) t.get(Transaction.TRANSACTIONFIELD.PRICE);
+            Money net = (Money) t.get(Transaction.TRANSACTIONFIELD.PRICE);
             e.add(notNull(net));
             CategoryString transactor = (CategoryString) t.get(Transaction.TRANSACTIONFIELD.TRANSACTOR);
             e.add(notNull((transactor == null) ? null : transactor.getValue()));
-            Double percent = (net != null && gross != null) ? (1.0 - (net / gross)) : null;
+            Double percent = (net != null && gross != null && !gross.isZero()) ? (1.0 - (net.toDouble() / gross.toDouble())) : null;
             e.add(notNull(percent));
-            Double percentPrice = (percent != null) ? (percent * gross) : null;
+            Money percentPrice = (percent != null) ? gross.multiply(percent) : null;
             e.add(notNull(percentPrice));
             newData.add(e);
         }
@@ -121,6 +123,9 @@ public class JobsPanel extends JPanel implements Observer {
     // Public functions --------------------------------------------------------
     @Override
     public void update(Observable o, Object o1) {
+        if (o1 == Data.EVENT.SAVED) {
+            return; // nothing to show
+        }
         addDataToTable();
     }
 }
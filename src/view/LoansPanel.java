@@ -1,6 +1,7 @@
 package view;
 
 import data.Data;
+import data.Dependency;
 import java.awt.*;
 import java.util.*;
 import javax.swing.*;
@@ -26,7 +27,7 @@ public class LoansPanel extends JPanel implements Observer {
         m_parentFrame = parentFrame;
 
         // make sure view changes when data changes
-        Data.GetInstance().addAsObserver(this);
+        Data.GetInstance().addAsObserver(this, Dependency.loans());
 
         createComponents();
         setPreferences();
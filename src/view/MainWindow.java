@@ -396,6 +396,7 @@ public class MainWindow extends JFrame {
         if (save || Settings.GetInstance().getSaveOnClose()) {
             data.Data.GetInstance().saveDataSingleThreaded();
         }
+        Settings.GetInstance().flush();
         System.exit(0);
     }
 
@@ -7,10 +7,12 @@ import javax.swing.*;
 import view.subpanels.*;
 import view.subpanels.ChartPanel.*;
 import view.swingextensions.CustomGridBag;
+import view.swingextensions.ValidationDateField;
 
 /**
- * This panel fills one of the tabs of the MainWindow. It contains a table with
- * sums per category.
+ * This panel fills one of the tabs of the MainWindow. It contains a table or
+ * chart with sums per category, transactor, payment method or in total, over
+ * a chosen time range.
  *
  * It asks for the data itself, but loads this data only in the constructor.
  *
@@ -23,6 +25,9 @@ public class StatsPanel extends JPanel {
     private JComboBox m_dropdown_chartType;
     private JComboBox m_dropdown_groupby;
     private JComboBox m_dropdown_time;
+    private ValidationDateField m_field_from;
+    private ValidationDateField m_field_to;
+    private JPanel m_customPanel;
     private JButton m_button_generate;
 
     // Members & constructor ---------------------------------------------------
@@ -49,6 +54,11 @@ public class StatsPanel extends JPanel {
         m_dropdown_chartType = new JComboBox(new String[]{"Table", "Line chart", "Pie chart", "Population chart"});
         m_dropdown_groupby = new JComboBox(new String[]{"Categories", "Transactors", "Payment method", "Profits"});
         m_dropdown_time = new JComboBox(new String[]{"This year", "This month", "All years", "Custom"});
+
+        // Custom time
+        m_field_from = new ValidationDateField(true, null, "first date");
+        m_field_to = new ValidationDateField(true, null, "last date");
+        m_customPanel = new JPanel();
     }
 
     /**
@@ -57,6 +67,9 @@ public class StatsPanel extends JPanel {
     private void setPreferences() {
         m_title.setFont(new Font("Serif", Font.PLAIN, 36));
         m_button_generate.setBackground(Color.darkGray);
+        m_field_from.setColumns(10);
+        m_field_to.setColumns(10);
+        m_customPanel.setVisible(false);
     }
 
     /**
@@ -67,13 +80,6 @@ public class StatsPanel extends JPanel {
             @Override
             public void actionPerformed(ActionEvent ae) {
                 String item = (String) m_dropdown_chartType.getSelectedItem();
-                if (item.equals("Table")) {
-                    m_dropdown_time.removeItem("Custom");
-                } else {
-                    if (m_dropdown_time.getItemCount() < 4) {
-                        m_dropdown_time.addItem("Custom");
-                    }
-                }
                 if (item.equals("Population chart")) {
                     m_dropdown_groupby.removeItem("Profits");
                 } else {
@@ -83,6 +89,13 @@ public class StatsPanel extends JPanel {
                 }
             }
         });
+        m_dropdown_time.addActionListener(new ActionListener() {
+            @Override
+            public void actionPerformed(ActionEvent ae) {
+                m_customPanel.setVisible("Custom".equals(m_dropdown_time.getSelectedItem()));
+                revalidate();
+            }
+        });
         m_button_generate.addActionListener(new ActionListener() {
             @Override
             public void actionPerformed(ActionEvent ae) {
@@ -101,6 +114,12 @@ public class StatsPanel extends JPanel {
         CHART_TYPE enumChartType = CHART_TYPE.valueOf(chartType.toUpperCase().replace(" ", "_"));
         GROUP_BY enumGroupBy = GROUP_BY.valueOf(groupBy.toUpperCase().replace(" ", "_"));
         TIME enumTime = TIME.valueOf(time.toUpperCase().replace(" ", "_"));
+        if (enumTime == TIME.CUSTOM) {
+            if (!m_field_from.isValid() || !m_field_to.isValid()) {
+                return;
+            }
+            m_chart.setCustomRange(m_field_from.getValue(), m_field_to.getValue());
+        }
         m_chart.setChartParameters(enumChartType, enumGroupBy, enumTime);
         m_chart.update(null, null);
     }
@@ -119,7 +138,14 @@ public class StatsPanel extends JPanel {
         c.add(dropdownPanel, m_dropdown_groupby, 2, 0);
         c.add(dropdownPanel, new JLabel("showing"), 3, 0);
         c.add(dropdownPanel, m_dropdown_time, 4, 0);
-        c.add(dropdownPanel, m_button_generate, 5, 0);
+        c.add(dropdownPanel, m_customPanel, 5, 0);
+        c.add(dropdownPanel, m_button_generate, 6, 0);
+
+        // Custom time
+        c.add(m_customPanel, new JLabel("from"), 0, 0);
+        c.add(m_customPanel, m_field_from, 1, 0);
+        c.add(m_customPanel, new JLabel("to"), 2, 0);
+        c.add(m_customPanel, m_field_to, 3, 0);
 
         // Chart
         JScrollPane chartPanel = new JScrollPane(m_chart);
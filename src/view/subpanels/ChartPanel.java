@@ -1,19 +1,38 @@
 package view.subpanels;
 
 import data.Data;
+import data.Dependency;
+import data.GroupedSeries;
+import data.GroupedSeries.PERIOD;
+import data.Query;
+import data.QueryCache;
 import data.QueryableList;
+import data.RangeSums;
+import data.SortedView;
 import java.awt.*;
+import java.awt.event.ComponentAdapter;
+import java.awt.event.ComponentEvent;
 import java.text.NumberFormat;
+import java.time.LocalDate;
+import java.time.temporal.ChronoUnit;
 import java.util.*;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
 import javafx.util.Pair;
 import javax.swing.*;
-import model.Transaction;
+import model.EpochDay;
+import model.Money;
 import model.Transaction.TRANSACTIONFIELD;
 import org.jfree.chart.*;
 import org.jfree.chart.labels.StandardPieSectionLabelGenerator;
+import org.jfree.chart.plot.CategoryPlot;
 import org.jfree.chart.plot.PiePlot;
+import org.jfree.chart.plot.PlotOrientation;
+import org.jfree.chart.plot.XYPlot;
+import org.jfree.data.category.DefaultCategoryDataset;
 import org.jfree.data.general.*;
-import view.swingextensions.CustomGridBag;
+import org.jfree.data.time.*;
+import org.jfree.util.SortOrder;
 import view.subpanels.StatsTable.COLUMNTYPE;
 
 /**
@@ -21,15 +40,41 @@ import view.subpanels.StatsTable.COLUMNTYPE;
  * grouping and time are passed on and then the panel is filled with the
  * according chart. Data need not be passed, the panel gets this by itself.
  *
+ * Every chart is made from one GroupedSeries: the totals per group and the
+ * sums per period, calculated in a single pass over the transactions. Charts
+ * of the totals per category, or in total, over a range of dates are read
+ * from the range sums of Data instead, without a pass. The series and the
+ * dataset of the chart are built by a ChartWorker in the
+ * background. The finished dataset is handed to the chart at once, and the
+ * chart replaces the old one in one step.
+ *
+ * Line charts have a time axis, so the points that are left after
+ * downsampling stay at their own dates.
+ *
+ * The panel keeps the charts of the last few parameter sets. Showing one of
+ * them again costs nothing as long as the data did not change since it was
+ * drawn. Otherwise only its dataset is replaced; the Swing and JFreeChart
+ * objects are reused.
+ *
  * @author Anaïs Ools
  */
 public class ChartPanel extends JPanel implements Observer {
 
+    private static final int MAX_GROUPS = 10; // the other groups are shown as one
+    private static final int MAX_RENDERED = 8;
+    private static final int PIXELS_PER_POINT = 4; // of a line chart
+    private static final int WIDTH_STEP = 200; // line charts are redrawn when the width passes a step
+
     private CHART_TYPE m_chartType;
     private GROUP_BY m_groupBy;
     private TIME m_time;
+    private LocalDate m_customFrom;
+    private LocalDate m_customTo;
+    private ChartWorker m_worker;
+    private int m_lineWidth; // the width the shown line chart was downsampled for
+    private final LinkedHashMap<Object, RenderedChart> m_rendered;
 
-    JPanel m_chartPanel;
+    JComponent m_chartPanel;
 
     public enum CHART_TYPE {
 
@@ -48,94 +93,242 @@ public class ChartPanel extends JPanel implements Observer {
 
     // Constructor -------------------------------------------------------------
     public ChartPanel() {
-        Data.GetInstance().addAsObserver(this);
+        Data.GetInstance().addAsObserver(this, Dependency.all());
         this.setBackground(Color.CYAN);
+        this.setLayout(new BorderLayout());
+        m_rendered = new LinkedHashMap<Object, RenderedChart>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Object, RenderedChart> eldest) {
+                return size() > MAX_RENDERED;
+            }
+        };
+        this.addComponentListener(new ComponentAdapter() {
+            @Override
+            public void componentResized(ComponentEvent e) {
+                if (m_chartType == CHART_TYPE.LINE_CHART && getLineWidth() != m_lineWidth) {
+                    update(null, null);
+                }
+            }
+        });
     }
 
     // Private functions -------------------------------------------------------
-    private void tableLayout() {
-        // TABLE - CATEGORIES - THIS_YEAR
-        // create table
-        ArrayList<Pair<String, COLUMNTYPE>> columns = new ArrayList();
-        columns.add(new Pair("Category", COLUMNTYPE.STRING));
-        columns.add(new Pair("+", COLUMNTYPE.PRICE));
-        columns.add(new Pair("-", COLUMNTYPE.PRICE));
-        columns.add(new Pair("Profit", COLUMNTYPE.PRICE));
-        StatsTable st = new StatsTable(columns);
-        m_chartPanel = st;
-        this.setLayout(new BorderLayout());
-        this.add(st, BorderLayout.CENTER);
-
-        // add data
-        int currentYear = Calendar.getInstance().get(Calendar.YEAR);
-        HashMap<String, double[]> categoryData = Data.GetInstance().getTransactions().selectDateAddedByYear(currentYear).groupPriceByCategory();
-        Iterator it = categoryData.entrySet().iterator();
-        while (it.hasNext()) {
-            Map.Entry<String, double[]> pair = (Map.Entry) it.next();
-            String category = pair.getKey();
-            double[] prices = pair.getValue();
-
-            ArrayList<Object> entry = new ArrayList();
-            entry.add(category);
-            entry.add(prices[0]);
-            entry.add(prices[1]);
-            entry.add(prices[0] + prices[1]);
-            st.addEntry(entry);
-            it.remove();
-        }
-    }
-
-    private void pieChartLayout() {
-        // PIE - CATEGORIES - THIS_YEAR
-
-        // Get data
-        int year = Calendar.getInstance().get(Calendar.YEAR);
-        QueryableList entries = Data.GetInstance().getTransactions().selectDateAddedByYear(year);
-
-        // Group data by categories
-        Map<String, Double> map = new HashMap();
-        for (Transaction t : entries) {
-            String category = (String) t.get(TRANSACTIONFIELD.CATEGORY);
-            double price = (double) t.get(TRANSACTIONFIELD.PRICE);
-            if (price > 0) {
-                if (map.containsKey(category)) {
-                    map.put(category, map.get(category) + price);
-                } else {
-                    map.put(category, price);
+    /**
+     * Translate the chart parameters to a query on the transactions.
+     *
+     * @return
+     */
+    private Query createQuery() {
+        Query q = new Query();
+        LocalDate today = LocalDate.now();
+        switch (m_time) {
+            case THIS_YEAR:
+                q.between(TRANSACTIONFIELD.DATE_ADDED, today.withDayOfYear(1), today.withDayOfYear(today.lengthOfYear()));
+                break;
+            case THIS_MONTH:
+                q.between(TRANSACTIONFIELD.DATE_ADDED, today.withDayOfMonth(1), today.withDayOfMonth(today.lengthOfMonth()));
+                break;
+            case CUSTOM:
+                if (m_customFrom != null || m_customTo != null) {
+                    q.between(TRANSACTIONFIELD.DATE_ADDED, m_customFrom, m_customTo);
                 }
-            }
+                break;
+            case ALL_YEARS:
+                break;
+        }
+        TRANSACTIONFIELD groupField = getGroupField();
+        if (groupField != null) {
+            q.groupBy(groupField);
         }
-        System.out.println(map.toString());
-
-        // Pie data set
-        DefaultPieDataset dataset = new DefaultPieDataset();
-        for (Map.Entry<String, Double> entry : map.entrySet()) {
-            dataset.setValue(entry.getKey(), entry.getValue());
-        }
-        dataset.sortByValues(org.jfree.util.SortOrder.DESCENDING);
-
-        // Pie chart
-        JFreeChart chart = ChartFactory.createPieChart(
-                "Category profit from this year", // chart title
-                dataset, // data
-                false, // include legend
-                false,
-                false
-        );
-        chart.setBackgroundPaint(Color.white);
-        PiePlot plot = (PiePlot) chart.getPlot();
-        plot.setBackgroundPaint(Color.white);
-        plot.setIgnoreZeroValues(true);
-        plot.setLabelGenerator(new StandardPieSectionLabelGenerator(
-                "{0} = {2}", NumberFormat.getNumberInstance(), NumberFormat.getPercentInstance()
-        ));
-        plot.setCircular(true);
-        plot.setNoDataMessage("No data available");
-        m_chartPanel = new org.jfree.chart.ChartPanel(chart);
+        return q;
+    }
 
-        this.setLayout(new BorderLayout());
-        this.add(m_chartPanel, BorderLayout.CENTER);
+    /**
+     * Get the transaction field to group on for the GROUP_BY parameter.
+     *
+     * @return the field, or null if all transactions form one group
+     */
+    private TRANSACTIONFIELD getGroupField() {
+        switch (m_groupBy) {
+            case TRANSACTORS:
+                return TRANSACTIONFIELD.TRANSACTOR;
+            case CATEGORIES:
+                return TRANSACTIONFIELD.CATEGORY;
+            case PAYMENT_METHOD:
+                return TRANSACTIONFIELD.PAYMENT_METHOD;
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * Get the display name of the GROUP_BY parameter.
+     *
+     * @return
+     */
+    private String getGroupName() {
+        switch (m_groupBy) {
+            case TRANSACTORS:
+                return "Transactor";
+            case CATEGORIES:
+                return "Category";
+            case PAYMENT_METHOD:
+                return "Payment method";
+            default:
+                return "Profits";
+        }
+    }
+
+    /**
+     * Get the display name of the TIME parameter, for chart titles.
+     *
+     * @param from
+     * @param to
+     * @return
+     */
+    private String getTimeName(LocalDate from, LocalDate to) {
+        switch (m_time) {
+            case THIS_YEAR:
+                return "this year";
+            case THIS_MONTH:
+                return "this month";
+            case ALL_YEARS:
+                return "all years";
+            default:
+                return EpochDay.format(EpochDay.of(from)) + " - " + EpochDay.format(EpochDay.of(to));
+        }
+    }
+
+    /**
+     * Get the dates the chart covers. For all years and an open custom range,
+     * these are the first and last dates of the transactions.
+     *
+     * @return
+     */
+    private LocalDate[] getDateRange() {
+        LocalDate today = LocalDate.now();
+        switch (m_time) {
+            case THIS_YEAR:
+                return new LocalDate[]{today.withDayOfYear(1), today.withDayOfYear(today.lengthOfYear())};
+            case THIS_MONTH:
+                return new LocalDate[]{today.withDayOfMonth(1), today.withDayOfMonth(today.lengthOfMonth())};
+            default:
+                SortedView view = Data.GetInstance().getTransactions().getSortedView(TRANSACTIONFIELD.DATE_ADDED);
+                int first = view.getFirstDay();
+                int last = view.getLastDay();
+                LocalDate from = first == EpochDay.NONE ? today : LocalDate.ofEpochDay(first);
+                LocalDate to = last == EpochDay.NONE ? today : LocalDate.ofEpochDay(last);
+                if (m_time == TIME.CUSTOM) {
+                    from = m_customFrom == null ? from : m_customFrom;
+                    to = m_customTo == null ? to : m_customTo;
+                }
+                return new LocalDate[]{from, to.isBefore(from) ? from : to};
+        }
+    }
+
+    /**
+     * Choose the length of the periods on the time axis, so a chart has
+     * neither a few nor thousands of points. Line charts are downsampled, so
+     * they always show days.
+     *
+     * @param chartType
+     * @param from
+     * @param to
+     * @return
+     */
+    private PERIOD getPeriod(CHART_TYPE chartType, LocalDate from, LocalDate to) {
+        if (chartType == CHART_TYPE.LINE_CHART) {
+            return PERIOD.DAY;
+        }
+        switch (m_time) {
+            case THIS_MONTH:
+                return PERIOD.DAY;
+            case THIS_YEAR:
+                return PERIOD.MONTH;
+            default:
+                long days = ChronoUnit.DAYS.between(from, to);
+                if (m_time == TIME.CUSTOM && days <= 62) {
+                    return PERIOD.DAY;
+                }
+                return ChronoUnit.YEARS.between(from, to) < (m_time == TIME.CUSTOM ? 3 : 2) ? PERIOD.MONTH : PERIOD.YEAR;
+        }
+    }
+
+    /**
+     * Replace the shown chart.
+     *
+     * @param chart
+     */
+    private void showChart(JComponent chart) {
+        if (m_chartPanel != chart) {
+            this.removeAll();
+            m_chartPanel = chart;
+            this.add(chart, BorderLayout.CENTER);
+        }
+        this.revalidate();
+        this.repaint();
+    }
+
+    /**
+     * Get the label of a group key.
+     *
+     * @param key
+     * @return
+     */
+    private static String groupLabel(Object key) {
+        return key == null ? "Total" : key.toString();
+    }
+
+    /**
+     * Get the width to downsample line charts for: the width of the panel,
+     * rounded up to a step so a chart is not redrawn for every pixel.
+     *
+     * @return
+     */
+    private int getLineWidth() {
+        return (Math.max(getWidth(), 1) + WIDTH_STEP - 1) / WIDTH_STEP * WIDTH_STEP;
+    }
+
+    /**
+     * Get a period of a series as a period on the time axis.
+     *
+     * @param series
+     * @param index
+     * @return
+     */
+    private static RegularTimePeriod timePeriod(GroupedSeries series, int index) {
+        int day = series.getPeriodStart(index);
+        switch (series.getPeriod()) {
+            case DAY:
+                return new Day(EpochDay.dayOfMonth(day), EpochDay.month(day) + 1, EpochDay.year(day));
+            case MONTH:
+                return new Month(EpochDay.month(day) + 1, EpochDay.year(day));
+            default:
+                return new Year(EpochDay.year(day));
+        }
+    }
+
+    /**
+     * Get the keys of the largest groups of a series, by their expenses or by
+     * the sum of their income and expenses.
+     *
+     * @param series
+     * @param byExpenses whether only the expenses count, e.g. for a chart of
+     * the expenses
+     * @return at most MAX_GROUPS keys
+     */
+    private static List<Object> largestGroups(GroupedSeries series, boolean byExpenses) {
+        ArrayList<Object> keys = new ArrayList(series.getKeys());
+        if (keys.size() <= MAX_GROUPS) {
+            return keys;
+        }
+        Collections.sort(keys, (a, b) -> Long.compare(volume(series, b, byExpenses), volume(series, a, byExpenses)));
+        return keys.subList(0, MAX_GROUPS);
+    }
 
+    private static long volume(GroupedSeries series, Object key, boolean byExpenses) {
+        long expenses = -series.getExpenses(key).getUnits();
+        return byExpenses ? expenses : series.getIncome(key).getUnits() + expenses;
     }
 
     // Public functions --------------------------------------------------------
@@ -151,20 +344,400 @@ public class ChartPanel extends JPanel implements Observer {
         m_chartType = ct;
         m_groupBy = gb;
         m_time = t;
+        if (m_groupBy != null && m_time != null) { // only changes in the charted data matter
+            Dependency dependency = new Dependency(createQuery().compile(), TRANSACTIONFIELD.PRICE, TRANSACTIONFIELD.DATE_ADDED,
+                    TRANSACTIONFIELD.CATEGORY, TRANSACTIONFIELD.TRANSACTOR, TRANSACTIONFIELD.PAYMENT_METHOD);
+            Data.GetInstance().addAsObserver(this, dependency);
+        }
+    }
+
+    /**
+     * Set the dates of the CUSTOM time parameter, both inclusive. Must be set
+     * before the chart parameters.
+     *
+     * @param from the first date, or null for the first transaction
+     * @param to the last date, or null for the last transaction
+     */
+    public void setCustomRange(LocalDate from, LocalDate to) {
+        m_customFrom = from;
+        m_customTo = to;
     }
 
     /**
-     * Update the chart when the data changes.
+     * Update the chart when the data changes. A chart that was drawn before
+     * with the current data is shown right away. Otherwise a ChartWorker
+     * builds it, and a chart that is still being built is cancelled, since its
+     * result would be outdated.
      *
      * @param o
      * @param o1
      */
     @Override
     public void update(Observable o, Object o1) {
-        if (m_chartType == null || m_groupBy == null || m_time == null) {
+        if (o1 == Data.EVENT.SAVED || m_chartType == null || m_groupBy == null || m_time == null) {
             return;
         }
-        //pieChart();
-        tableLayout();
+        if (m_worker != null) {
+            m_worker.cancel(true);
+            m_worker = null;
+        }
+        ChartWorker worker = new ChartWorker();
+        m_lineWidth = worker.m_width;
+        if (worker.isRendered()) {
+            showChart(m_rendered.get(worker.m_renderKey).m_component);
+        } else {
+            m_worker = worker;
+            worker.execute();
+        }
+    }
+
+    // Private classes ---------------------------------------------------------
+    /**
+     * Builds the series and the dataset of a chart in the background, and
+     * shows the chart when it is done.
+     */
+    private class ChartWorker extends SwingWorker<Object, Void> {
+
+        private final CHART_TYPE m_workerChartType;
+        private final GROUP_BY m_workerGroupBy;
+        private final Query m_query;
+        private final QueryableList m_transactions; // null if the series is known or read from the range sums
+        private final RangeSums m_sums; // null if the series is not read from the range sums
+        private final LocalDate m_from;
+        private final LocalDate m_to;
+        private final PERIOD m_period;
+        private final String m_groupName;
+        private final String m_title;
+        private final int m_width; // for line charts, 0 for other charts
+        private final int m_maxPoints;
+
+        private final QueryCache m_cache;
+        private final Object m_key;
+        private final int m_partition;
+        private final long m_version;
+        private GroupedSeries m_series;
+        private final Object m_renderKey;
+
+        /**
+         * Capture the parameters of the chart and look up the series in the
+         * cache. If it is not there, it is read from the range sums, or the
+         * worker waits until they are built. Otherwise the transactions to
+         * aggregate are copied, since the list may change while the worker
+         * runs. Must be created on the event thread.
+         */
+        private ChartWorker() {
+            m_workerChartType = m_chartType;
+            m_workerGroupBy = m_groupBy;
+            m_query = createQuery();
+            LocalDate[] range = getDateRange();
+            m_from = range[0];
+            m_to = range[1];
+            m_period = getPeriod(m_chartType, m_from, m_to);
+            m_width = m_chartType == CHART_TYPE.LINE_CHART ? getLineWidth() : 0;
+            m_maxPoints = Math.max(m_width, 400) / PIXELS_PER_POINT;
+            m_groupName = getGroupName();
+            String title = m_groupName + " - " + getTimeName(m_from, m_to);
+            m_title = m_chartType == CHART_TYPE.PIE_CHART && m_groupBy != GROUP_BY.PROFITS ? "Expenses per " + title : title;
+
+            m_cache = Data.GetInstance().getQueryCache();
+            boolean oneYear = m_time != TIME.ALL_YEARS && m_from.getYear() == m_to.getYear();
+            m_partition = oneYear ? m_from.getYear() : QueryCache.ALL;
+            boolean totals = usesRangeSums();
+            m_key = Arrays.asList(totals ? "chart totals" : "chart", m_groupBy, m_time, m_from, m_to, m_period);
+            m_version = m_cache.getVersion(m_partition);
+            m_series = (GroupedSeries) m_cache.get(m_key, m_partition);
+            m_sums = totals ? Data.GetInstance().getRangeSums(TRANSACTIONFIELD.DATE_ADDED) : null;
+            if (m_series == null && totals && m_sums.isBuilt()) {
+                m_series = getTotals();
+            }
+            m_transactions = m_series == null && !totals ? m_query.snapshot(Data.GetInstance().getTransactions()) : null;
+            m_renderKey = Arrays.asList(m_chartType, m_groupBy, m_time, m_from, m_to, m_width);
+        }
+
+        private GroupedSeries getTotals() {
+            return m_sums.getTotals(EpochDay.of(m_from), EpochDay.of(m_to), m_workerGroupBy == GROUP_BY.CATEGORIES);
+        }
+
+        /**
+         * Check if the chart only needs the totals of a range of dates, per
+         * category or in total, which the range sums hold.
+         *
+         * @return
+         */
+        private boolean usesRangeSums() {
+            boolean hasRange = m_time != TIME.ALL_YEARS && (m_time != TIME.CUSTOM || m_customFrom != null || m_customTo != null);
+            boolean byCategory = m_groupBy == GROUP_BY.CATEGORIES || m_groupBy == GROUP_BY.PROFITS;
+            return hasRange && byCategory && m_chartType != CHART_TYPE.LINE_CHART;
+        }
+
+        /**
+         * Check if the chart was drawn before with the current data.
+         *
+         * @return
+         */
+        private boolean isRendered() {
+            RenderedChart rendered = m_rendered.get(m_renderKey);
+            return rendered != null && rendered.m_version == m_version;
+        }
+
+        @Override
+        protected Object doInBackground() throws InterruptedException {
+            if (m_series == null && m_sums != null) {
+                m_sums.awaitBuilt();
+                m_series = getTotals();
+            } else if (m_series == null) {
+                m_series = m_query.aggregate(m_transactions, TRANSACTIONFIELD.DATE_ADDED, m_period, m_from, m_to);
+            }
+            if (isCancelled()) {
+                return null;
+            }
+            switch (m_workerChartType) {
+                case PIE_CHART:
+                    return pieDataset();
+                case LINE_CHART:
+                    return lineDataset();
+                case POPULATION_CHART:
+                    return populationDataset();
+                default:
+                    return tableRows();
+            }
+        }
+
+        @Override
+        protected void done() {
+            if (isCancelled() || m_worker != this) {
+                return; // outdated
+            }
+            m_worker = null;
+            try {
+                Object data = get();
+                m_cache.put(m_key, m_partition, m_version, m_series);
+                RenderedChart rendered = m_rendered.get(m_renderKey);
+                if (rendered == null) {
+                    rendered = createChart(data);
+                    m_rendered.put(m_renderKey, rendered);
+                } else {
+                    setData(rendered, data);
+                }
+                rendered.m_version = m_version;
+                showChart(rendered.m_component);
+            } catch (InterruptedException | ExecutionException ex) {
+                System.out.println("Building the chart failed: " + ex.getMessage());
+            }
+        }
+
+        // Datasets ------------------------------------------------------------
+        private ArrayList<ArrayList<Object>> tableRows() {
+            ArrayList<ArrayList<Object>> rows = new ArrayList();
+            for (Object key : m_series.getKeys()) {
+                ArrayList<Object> entry = new ArrayList();
+                entry.add(groupLabel(key));
+                entry.add(m_series.getIncome(key));
+                entry.add(m_series.getExpenses(key));
+                entry.add(m_series.getProfit(key));
+                rows.add(entry);
+            }
+            return rows;
+        }
+
+        /**
+         * The expenses per group, or the income against the expenses when
+         * there are no groups.
+         */
+        private DefaultPieDataset pieDataset() {
+            DefaultPieDataset dataset = new DefaultPieDataset();
+            if (m_workerGroupBy == GROUP_BY.PROFITS) {
+                Money income = Money.ZERO;
+                Money expenses = Money.ZERO;
+                for (Object key : m_series.getKeys()) {
+                    income = income.add(m_series.getIncome(key));
+                    expenses = expenses.add(m_series.getExpenses(key));
+                }
+                dataset.setValue("Income", income.toDouble());
+                dataset.setValue("Expenses", -expenses.toDouble());
+                return dataset;
+            }
+            List<Object> largest = largestGroups(m_series, true);
+            double other = 0;
+            for (Object key : m_series.getKeys()) {
+                double expenses = -m_series.getExpenses(key).toDouble();
+                if (largest.contains(key)) {
+                    dataset.setValue(groupLabel(key), expenses);
+                } else {
+                    other += expenses;
+                }
+            }
+            dataset.sortByValues(SortOrder.DESCENDING);
+            if (other > 0) {
+                dataset.setValue("Other", other);
+            }
+            return dataset;
+        }
+
+        /**
+         * The profit of each group per period, or the income, expenses and
+         * profit per period when there are no groups. Long series are
+         * downsampled to the width of the plot, each on its own.
+         */
+        private TimeSeriesCollection lineDataset() {
+            int count = m_series.getPeriodCount();
+            ArrayList<String> names = new ArrayList();
+            double[][] values;
+            if (m_workerGroupBy == GROUP_BY.PROFITS) {
+                names.addAll(Arrays.asList("Income", "Expenses", "Profit"));
+                values = new double[3][count];
+                for (int i = 0; i < count; i++) {
+                    long income = 0;
+                    long expenses = 0;
+                    for (Object key : m_series.getKeys()) {
+                        income += m_series.getIncome(key, i).getUnits();
+                        expenses += m_series.getExpenses(key, i).getUnits();
+                    }
+                    values[0][i] = Money.fromUnits(income).toDouble();
+                    values[1][i] = -Money.fromUnits(expenses).toDouble();
+                    values[2][i] = Money.fromUnits(income + expenses).toDouble();
+                }
+            } else {
+                List<Object> largest = largestGroups(m_series, false);
+                boolean hasOther = largest.size() < m_series.getKeys().size();
+                for (Object key : largest) {
+                    names.add(groupLabel(key));
+                }
+                if (hasOther) {
+                    names.add("Other");
+                }
+                values = new double[names.size()][count];
+                for (int i = 0; i < count; i++) {
+                    long other = 0;
+                    for (Object key : m_series.getKeys()) {
+                        int index = largest.indexOf(key);
+                        if (index >= 0) {
+                            values[index][i] = m_series.getProfit(key, i).toDouble();
+                        } else {
+                            other += m_series.getProfit(key, i).getUnits();
+                        }
+                    }
+                    if (hasOther) {
+                        values[largest.size()][i] = Money.fromUnits(other).toDouble();
+                    }
+                }
+            }
+
+            TimeSeries[] lines = new TimeSeries[names.size()];
+            for (int j = 0; j < lines.length; j++) {
+                lines[j] = new TimeSeries(names.get(j));
+            }
+            for (int j = 0; j < lines.length; j++) {
+                for (int i : Downsampler.minMax(values[j], m_maxPoints)) {
+                    lines[j].add(timePeriod(m_series, i), values[j][i], false);
+                }
+            }
+            TimeSeriesCollection dataset = new TimeSeriesCollection();
+            for (TimeSeries line : lines) {
+                dataset.addSeries(line);
+            }
+            return dataset;
+        }
+
+        /**
+         * The income to the right and the expenses to the left of each group.
+         */
+        private DefaultCategoryDataset populationDataset() {
+            DefaultCategoryDataset dataset = new DefaultCategoryDataset();
+            for (Object key : m_series.getKeys()) {
+                dataset.addValue(m_series.getIncome(key).toDouble(), "Income", groupLabel(key));
+                dataset.addValue(m_series.getExpenses(key).toDouble(), "Expenses", groupLabel(key));
+            }
+            return dataset;
+        }
+
+        // Charts --------------------------------------------------------------
+        /**
+         * Create the chart of a finished dataset. Runs on the event thread.
+         *
+         * @param data
+         * @return
+         */
+        private RenderedChart createChart(Object data) {
+            JFreeChart chart;
+            switch (m_workerChartType) {
+                case PIE_CHART:
+                    chart = ChartFactory.createPieChart(m_title, (DefaultPieDataset) data, false, true, false);
+                    PiePlot pie = (PiePlot) chart.getPlot();
+                    pie.setIgnoreZeroValues(true);
+                    pie.setLabelGenerator(new StandardPieSectionLabelGenerator(
+                            "{0} = {2}", NumberFormat.getNumberInstance(), NumberFormat.getPercentInstance()
+                    ));
+                    pie.setCircular(true);
+                    break;
+                case LINE_CHART:
+                    chart = ChartFactory.createTimeSeriesChart(m_title, null, "Amount", (TimeSeriesCollection) data,
+                            true, true, false);
+                    break;
+                case POPULATION_CHART:
+                    chart = ChartFactory.createStackedBarChart(m_title, m_groupName, "Amount", (DefaultCategoryDataset) data,
+                            PlotOrientation.HORIZONTAL, true, true, false);
+                    break;
+                default:
+                    return new RenderedChart(null, createTable(data));
+            }
+            chart.setBackgroundPaint(Color.white);
+            chart.getPlot().setBackgroundPaint(Color.white);
+            chart.getPlot().setNoDataMessage("No data available");
+            if (chart.getPlot() instanceof CategoryPlot) {
+                chart.getCategoryPlot().setRangeGridlinePaint(Color.lightGray);
+            } else if (chart.getPlot() instanceof XYPlot) {
+                chart.getXYPlot().setRangeGridlinePaint(Color.lightGray);
+                chart.getXYPlot().setDomainGridlinePaint(Color.lightGray);
+            }
+            return new RenderedChart(chart, new org.jfree.chart.ChartPanel(chart));
+        }
+
+        /**
+         * Give a chart that was drawn before a new dataset. JFreeChart redraws
+         * the chart once the dataset is replaced.
+         *
+         * @param rendered
+         * @param data
+         */
+        private void setData(RenderedChart rendered, Object data) {
+            switch (m_workerChartType) {
+                case PIE_CHART:
+                    ((PiePlot) rendered.m_chart.getPlot()).setDataset((DefaultPieDataset) data);
+                    break;
+                case LINE_CHART:
+                    rendered.m_chart.getXYPlot().setDataset((TimeSeriesCollection) data);
+                    break;
+                case POPULATION_CHART:
+                    rendered.m_chart.getCategoryPlot().setDataset((DefaultCategoryDataset) data);
+                    break;
+                default:
+                    ((StatsTable) rendered.m_component).setEntries((ArrayList<ArrayList<Object>>) data);
+            }
+        }
+
+        private StatsTable createTable(Object data) {
+            ArrayList<Pair<String, COLUMNTYPE>> columns = new ArrayList();
+            columns.add(new Pair(m_groupName, COLUMNTYPE.STRING));
+            columns.add(new Pair("+", COLUMNTYPE.PRICE));
+            columns.add(new Pair("-", COLUMNTYPE.PRICE));
+            columns.add(new Pair("Profit", COLUMNTYPE.PRICE));
+            return new StatsTable((ArrayList<ArrayList<Object>>) data, columns);
+        }
+    }
+
+    /**
+     * A chart that was drawn before, with the version of the data it shows.
+     */
+    private static class RenderedChart {
+
+        private final JFreeChart m_chart; // null for a table
+        private final JComponent m_component;
+        private long m_version;
+
+        private RenderedChart(JFreeChart chart, JComponent component) {
+            m_chart = chart;
+            m_component = component;
+        }
     }
 }
@@ -0,0 +1,63 @@
+package view.subpanels;
+
+import java.util.Arrays;
+import java.util.BitSet;
+
+/**
+ * Chooses which points of a long series to draw, so a chart never gets more
+ * points than it has room for. The series is split in buckets of consecutive
+ * points, and of every bucket only the lowest and highest point are kept. The
+ * shape of the line stays the same and no spike is lost, while the number of
+ * points no longer depends on the length of the series.
+ *
+ * Several series on the same chart are downsampled one by one, so each of
+ * them keeps the full number of points and its own spikes.
+ *
+ * The kept points are no longer evenly spaced, so they should be drawn at their
+ * own x-values, e.g. on a time axis.
+ *
+ * @author Anaïs Ools
+ */
+public final class Downsampler {
+
+    private Downsampler() { // only static functions
+    }
+
+    /**
+     * Choose the points to draw.
+     *
+     * @param values the values of the series
+     * @param maxPoints the maximum number of points to keep
+     * @return the indices of the points to keep, in ascending order
+     */
+    public static int[] minMax(double[] values, int maxPoints) {
+        int length = values.length;
+        if (length <= maxPoints || length <= 2) {
+            int[] all = new int[length];
+            Arrays.setAll(all, i -> i);
+            return all;
+        }
+        int buckets = Math.max(1, (maxPoints - 2) / 2);
+        BitSet keep = new BitSet(length);
+        keep.set(0);
+        keep.set(length - 1);
+        for (int b = 0; b < buckets; b++) {
+            int start = 1 + (int) ((long) b * (length - 2) / buckets);
+            int end = 1 + (int) ((long) (b + 1) * (length - 2) / buckets);
+            int min = start;
+            int max = start;
+            for (int i = start + 1; i < end; i++) {
+                if (values[i] < values[min]) {
+                    min = i;
+                } else if (values[i] > values[max]) {
+                    max = i;
+                }
+            }
+            if (start < end) {
+                keep.set(min);
+                keep.set(max);
+            }
+        }
+        return keep.stream().toArray();
+    }
+}
@@ -0,0 +1,221 @@
+package view.subpanels;
+
+import java.awt.*;
+import java.util.function.Consumer;
+import javax.swing.*;
+import javax.swing.event.DocumentEvent;
+import javax.swing.event.DocumentListener;
+import model.EpochDay;
+import model.Money;
+import view.swingextensions.CustomGridBag;
+
+/**
+ * This panel holds the fields to filter a TransactionTable on: a text, a price
+ * range, a date range and whether the transactions are exceptional. Every
+ * change in the fields is passed on as new Criteria right away, so the table
+ * filters while the user types.
+ *
+ * Fields that are empty or can't be read (yet) don't filter.
+ *
+ * @author Anaïs Ools
+ */
+public class FilterBar extends JPanel {
+
+    // Members & constructors --------------------------------------------------
+    private final Consumer<Criteria> m_listener;
+
+    private JTextField m_textField;
+    private JTextField m_minPriceField;
+    private JTextField m_maxPriceField;
+    private JTextField m_fromDateField;
+    private JTextField m_toDateField;
+    private JComboBox<String> m_exceptionalBox;
+
+    /**
+     * Create a filter bar.
+     *
+     * @param listener gets the new criteria every time a field changes
+     */
+    public FilterBar(Consumer<Criteria> listener) {
+        m_listener = listener;
+
+        createComponents();
+        setPreferences();
+        setActions();
+        createUI();
+    }
+
+    // Private functions -------------------------------------------------------
+    /**
+     * Initialize all members.
+     */
+    private void createComponents() {
+        m_textField = new JTextField(14);
+        m_minPriceField = new JTextField(6);
+        m_maxPriceField = new JTextField(6);
+        m_fromDateField = new JTextField(8);
+        m_toDateField = new JTextField(8);
+        m_exceptionalBox = new JComboBox(new String[]{"All", "Exceptional", "Not exceptional"});
+    }
+
+    /**
+     * Set layout-related preferences for the panel.
+     */
+    private void setPreferences() {
+        m_textField.setToolTipText("Text in the description, category, transactor or payment method");
+        m_minPriceField.setToolTipText("Minimum price");
+        m_maxPriceField.setToolTipText("Maximum price");
+        m_fromDateField.setToolTipText("First date (dd/mm/yyyy)");
+        m_toDateField.setToolTipText("Last date (dd/mm/yyyy)");
+        m_minPriceField.setHorizontalAlignment(SwingConstants.RIGHT);
+        m_maxPriceField.setHorizontalAlignment(SwingConstants.RIGHT);
+    }
+
+    /**
+     * Set actions for members of the panel.
+     */
+    private void setActions() {
+        DocumentListener dl = new DocumentListener() {
+            @Override
+            public void insertUpdate(DocumentEvent de) {
+                changed();
+            }
+
+            @Override
+            public void removeUpdate(DocumentEvent de) {
+                changed();
+            }
+
+            @Override
+            public void changedUpdate(DocumentEvent de) {
+            }
+        };
+        m_textField.getDocument().addDocumentListener(dl);
+        m_minPriceField.getDocument().addDocumentListener(dl);
+        m_maxPriceField.getDocument().addDocumentListener(dl);
+        m_fromDateField.getDocument().addDocumentListener(dl);
+        m_toDateField.getDocument().addDocumentListener(dl);
+        m_exceptionalBox.addActionListener(ae -> changed());
+    }
+
+    /**
+     * Add members to the panel, using layout managers.
+     */
+    private void createUI() {
+        CustomGridBag c = new CustomGridBag();
+        c.setInsets(0, 5, 0, 5);
+        c.add(this, new JLabel("Filter"), 0, 0);
+        c.add(this, m_textField, 1, 0);
+        c.add(this, new JLabel("Price"), 2, 0);
+        c.add(this, m_minPriceField, 3, 0);
+        c.add(this, new JLabel("-"), 4, 0);
+        c.add(this, m_maxPriceField, 5, 0);
+        c.add(this, new JLabel("Date"), 6, 0);
+        c.add(this, m_fromDateField, 7, 0);
+        c.add(this, new JLabel("-"), 8, 0);
+        c.add(this, m_toDateField, 9, 0);
+        c.add(this, m_exceptionalBox, 10, 0);
+    }
+
+    private void changed() {
+        m_listener.accept(getCriteria());
+    }
+
+    private static long parsePrice(String s, long empty) {
+        if (s.trim().isEmpty()) {
+            return empty;
+        }
+        try {
+            return Money.parse(s).getUnits();
+        } catch (NumberFormatException nfe) {
+            return empty;
+        }
+    }
+
+    private static int parseDate(String s, int empty) {
+        int day = EpochDay.parse(s);
+        return day == EpochDay.NONE ? empty : day;
+    }
+
+    // Public functions --------------------------------------------------------
+    /**
+     * Get the criteria of the current contents of the fields.
+     *
+     * @return
+     */
+    public Criteria getCriteria() {
+        Boolean exceptional = null;
+        if (m_exceptionalBox.getSelectedIndex() == 1) {
+            exceptional = true;
+        } else if (m_exceptionalBox.getSelectedIndex() == 2) {
+            exceptional = false;
+        }
+        return new Criteria(m_textField.getText(),
+                parsePrice(m_minPriceField.getText(), Long.MIN_VALUE), parsePrice(m_maxPriceField.getText(), Long.MAX_VALUE),
+                parseDate(m_fromDateField.getText(), Integer.MIN_VALUE), parseDate(m_toDateField.getText(), Integer.MAX_VALUE),
+                exceptional);
+    }
+
+    // Public classes ----------------------------------------------------------
+    /**
+     * The values to filter on. Rows are matched against values that were
+     * extracted from the transactions up front, so matching can run on any
+     * thread.
+     */
+    public static class Criteria {
+
+        private final String[] m_words;
+        private final long m_minPrice;
+        private final long m_maxPrice;
+        private final int m_fromDay;
+        private final int m_toDay;
+        private final Boolean m_exceptional;
+
+        private Criteria(String text, long minPrice, long maxPrice, int fromDay, int toDay, Boolean exceptional) {
+            String trimmed = text.trim().toLowerCase();
+            m_words = trimmed.isEmpty() ? new String[0] : trimmed.split("\\s+");
+            m_minPrice = minPrice;
+            m_maxPrice = maxPrice;
+            m_fromDay = fromDay;
+            m_toDay = toDay;
+            m_exceptional = exceptional;
+        }
+
+        /**
+         * Check if the criteria don't filter anything.
+         *
+         * @return
+         */
+        public boolean isEmpty() {
+            return m_words.length == 0 && m_minPrice == Long.MIN_VALUE && m_maxPrice == Long.MAX_VALUE
+                    && m_fromDay == Integer.MIN_VALUE && m_toDay == Integer.MAX_VALUE && m_exceptional == null;
+        }
+
+        /**
+         * Check if a row matches the criteria.
+         *
+         * @param text the lowercase text of the row
+         * @param price the price in minor units
+         * @param day the epoch day of the row, or EpochDay.NONE
+         * @param exceptional
+         * @return
+         */
+        public boolean matches(String text, long price, int day, boolean exceptional) {
+            if (price < m_minPrice || price > m_maxPrice) {
+                return false;
+            }
+            if (day == EpochDay.NONE ? (m_fromDay != Integer.MIN_VALUE || m_toDay != Integer.MAX_VALUE) : (day < m_fromDay || day > m_toDay)) {
+                return false;
+            }
+            if (m_exceptional != null && m_exceptional != exceptional) {
+                return false;
+            }
+            for (String word : m_words) {
+                if (!text.contains(word)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+}
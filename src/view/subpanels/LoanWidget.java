@@ -1,20 +1,25 @@
 package view.subpanels;
 
-import data.QueryableList;
+import data.Data;
+import data.LoansLedger;
 import java.awt.*;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
-import java.text.SimpleDateFormat;
 import java.util.*;
 import javax.swing.*;
 import javax.swing.border.EtchedBorder;
 import model.CategoryString;
+import model.EpochDay;
+import model.Money;
 import model.Settings;
 import model.Transaction;
 import view.swingextensions.CustomGridBag;
 
 /**
- * This class is a panel that is filled with the loans of one transactor.
+ * This class is a panel that is filled with the loans of one transactor. The
+ * loans are read from the LoansLedger. The panel is only redrawn when the
+ * account of its transactor changed, and the rows with the separate loans are
+ * only built when the panel is unfolded.
  *
  * @author Anaïs Ools
  */
@@ -24,7 +29,8 @@ public class LoanWidget extends JPanel {
     private final JFrame m_parentFrame;
 
     private final CategoryString m_transactor;
-    private QueryableList m_transactions;
+    private long m_version; // of the account that is shown
+    private boolean m_rowsOutdated;
     private boolean m_collapsed;
 
     private JLabel m_title;
@@ -36,7 +42,7 @@ public class LoanWidget extends JPanel {
     public LoanWidget(JFrame parentFrame, CategoryString transactor) {
         m_parentFrame = parentFrame;
         m_transactor = transactor;
-        m_transactions = new QueryableList();
+        m_version = -1;
 
         createComponents();
         setPreferences();
@@ -44,22 +50,7 @@ public class LoanWidget extends JPanel {
         createUI();
 
         m_collapsed = true;
-        update();
-    }
-
-    public LoanWidget(JFrame parentFrame, Transaction t) {
-        m_parentFrame = parentFrame;
-        m_transactor = (CategoryString) t.get(Transaction.TRANSACTIONFIELD.TRANSACTOR);
-        m_transactions = new QueryableList();
-        addTransaction(t);
-
-        createComponents();
-        setPreferences();
-        setActions();
-        createUI();
-
-        m_collapsed = true;
-        update();
+        update(Data.GetInstance().getLoansLedger());
     }
 
     // Private functions -------------------------------------------------------
@@ -103,11 +94,10 @@ public class LoanWidget extends JPanel {
         m_buttonRemoveAll.addActionListener(new ActionListener() {
             @Override
             public void actionPerformed(ActionEvent ae) {
-                for (Transaction t : m_transactions) {
+                for (Transaction t : Data.GetInstance().getLoansLedger().getTransactions(m_transactor)) {
                     t.set(Transaction.TRANSACTIONFIELD.PAYBACK, false);
                     t.set(Transaction.TRANSACTIONFIELD.PAYBACK_TRANSACTOR, null);
                 }
-                update();
             }
         });
     }
@@ -129,12 +119,16 @@ public class LoanWidget extends JPanel {
 
     /**
      * Set if the panel is collapsed or unfolded. This also changes the panel if
-     * the state changes.
+     * the state changes. The rows of the loans are built when they are shown
+     * for the first time after the account changed.
      *
      * @param collapsed
      */
     private void setCollapsed(boolean collapsed) {
         m_collapsed = collapsed;
+        if (!m_collapsed && m_rowsOutdated) {
+            loadTransactions(Data.GetInstance().getLoansLedger());
+        }
         if (m_collapsed) {
             m_buttonCollapse.setText("+");
         } else {
@@ -148,27 +142,25 @@ public class LoanWidget extends JPanel {
     /**
      * This first clears the currently displayed list of transactions, and then
      * fills it with the transactor's loans.
+     *
+     * @param ledger
      */
-    private void loadTransactions() {
-        if (m_transactions == null || m_list == null) {
-            return;
-        }
+    private void loadTransactions(LoansLedger ledger) {
+        m_rowsOutdated = false;
         for (Component l : m_list) {
             this.remove(l);
         }
         m_list.clear();
-        m_transactions = m_transactions.sortByDateAdded();
 
         CustomGridBag c = new CustomGridBag();
-        SimpleDateFormat df = new SimpleDateFormat("dd/MM/yyyy");
 
         // Create labels
         int i = 1;
-        for (Transaction t : m_transactions) {
+        for (Transaction t : ledger.getTransactions(m_transactor)) {
             // Create labels and button
             String description = (String) t.get(Transaction.TRANSACTIONFIELD.DESCRIPTION);
-            String date = df.format((Date) t.get(Transaction.TRANSACTIONFIELD.DATE_ADDED));
-            double price = getPrice(t);
+            String date = EpochDay.format(t.getEpochDay(Transaction.TRANSACTIONFIELD.DATE_ADDED));
+            Money price = LoansLedger.getPrice(t);
 
             JLabel label_description = new JLabel(description);
             JLabel label_price = new JLabel(Settings.GetInstance().convertPriceToString(price));
@@ -200,55 +192,21 @@ public class LoanWidget extends JPanel {
 
             i++;
         }
+        this.revalidate();
     }
 
     /**
      * Update the label that displays the total price.
-     */
-    private void updateTotalPrice() {
-        double price = 0;
-        for (Transaction t : m_transactions) {
-            CategoryString transactor = (CategoryString) t.get(Transaction.TRANSACTIONFIELD.TRANSACTOR);
-            price += getPrice(t);
-        }
-        m_price.setText(model.Settings.GetInstance().convertPriceToString(price));
-        m_buttonRemoveAll.setVisible(price == 0);
-    }
-
-    /**
-     * Get the price value from a transaction. This function can be used to
-     * correct the price that is returned, e.g. to return a positive value as
-     * price when the transaction price is negative.
      *
-     * @param t The transaction to get the price from.
-     * @return The (possibly corrected) price to display.
+     * @param ledger
      */
-    private double getPrice(Transaction t) {
-        try {
-            double price = (double) t.get(Transaction.TRANSACTIONFIELD.PAYBACK_PRICE);
-            if (price == 0.0) {
-                price = (double) t.get(Transaction.TRANSACTIONFIELD.PRICE);
-            }
-            return price;
-        } catch (NullPointerException npe) {
-            return -(double) t.get(Transaction.TRANSACTIONFIELD.PRICE);
-        }
+    private void updateTotalPrice(LoansLedger ledger) {
+        Money price = ledger.getBalance(m_transactor);
+        m_price.setText(model.Settings.GetInstance().convertPriceToString(price));
+        m_buttonRemoveAll.setVisible(price.isZero());
     }
 
     // Public functions --------------------------------------------------------
-    /**
-     * Add a transaction to the panel. This happens only if the transactor is
-     * the same one as the panel represents.
-     *
-     * @param t
-     */
-    public void addTransaction(Transaction t) {
-        if (m_transactor.equals((CategoryString) t.get(Transaction.TRANSACTIONFIELD.PAYBACK_TRANSACTOR))) {
-            m_transactions.add(t);
-        }
-        update();
-    }
-
     /**
      * Get the transactor that the panel represents.
      *
@@ -259,11 +217,19 @@ public class LoanWidget extends JPanel {
     }
 
     /**
-     * Force the loan widget to update itself.
+     * Update the panel to the account of its transactor, if it changed since
+     * the panel was last updated.
+     *
+     * @param ledger
      */
-    public void update() {
-        loadTransactions();
-        updateTotalPrice();
+    public void update(LoansLedger ledger) {
+        long version = ledger.getVersion(m_transactor);
+        if (version == m_version) {
+            return;
+        }
+        m_version = version;
+        m_rowsOutdated = true;
+        updateTotalPrice(ledger);
         setCollapsed(m_collapsed);
     }
 }
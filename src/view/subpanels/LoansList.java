@@ -1,17 +1,19 @@
 package view.subpanels;
 
 import data.Data;
-import data.QueryableList;
+import data.Dependency;
+import data.LoansLedger;
 import java.awt.*;
 import java.util.*;
 import javax.swing.*;
 import model.CategoryString;
-import model.Transaction;
 import view.swingextensions.CustomGridBag;
 
 /**
  * This class represents a panel filled with loans. The loans are loaded
- * automatically from the data and the panel updates when the data changes.
+ * automatically from the LoansLedger and the panel updates when the data
+ * changes: widgets are only added or removed for transactors that gain or lose
+ * all their loans, and only the widgets of changed accounts are redrawn.
  *
  * @author Anaïs Ools
  */
@@ -19,14 +21,13 @@ public class LoansList extends JPanel implements Observer {
 
     private final JFrame m_parentFrame;
     private JLabel m_title;
-    private QueryableList m_data;
-    private ArrayList<LoanWidget> m_loanWidgets;
+    private LinkedHashMap<CategoryString, LoanWidget> m_loanWidgets; // in order of the panel
     private JPanel m_loanPanel;
 
     // Constructor -------------------------------------------------------------
     public LoansList(JFrame parentFrame) {
         m_parentFrame = parentFrame;
-        Data.GetInstance().addAsObserver(this);
+        Data.GetInstance().addAsObserver(this, Dependency.loans());
 
         createComponents();
         setPreferences();
@@ -34,7 +35,6 @@ public class LoansList extends JPanel implements Observer {
         createUI();
 
         loadData();
-        addLoansToPanel();
     }
 
     // Private functions -------------------------------------------------------
@@ -43,7 +43,7 @@ public class LoansList extends JPanel implements Observer {
      */
     private void createComponents() {
         m_title = new JLabel("Loans");
-        m_loanWidgets = new ArrayList();
+        m_loanWidgets = new LinkedHashMap();
         m_loanPanel = new JPanel();
     }
 
@@ -79,37 +79,28 @@ public class LoansList extends JPanel implements Observer {
     }
 
     /**
-     * Load the data into the corresponding members.
+     * Reconcile the widgets with the transactors in the ledger: remove the
+     * widgets of transactors without loans, add widgets for new transactors
+     * and let the other widgets update themselves. The panel is only laid out
+     * again if the list of transactors changed.
      */
     private void loadData() {
-        m_data = Data.GetInstance().getTransactions().getLoans();
-        m_loanWidgets.clear();
-        Map<CategoryString, LoanWidget> transactorWidgets = new HashMap();
-        for (model.Transaction t : m_data) {
-            CategoryString transactor = (CategoryString) t.get(Transaction.TRANSACTIONFIELD.PAYBACK_TRANSACTOR);
-            if (transactor != null) {
-                LoanWidget widget = transactorWidgets.get(transactor);
-                if (widget == null) { // does not exist yet
-                    widget = new LoanWidget(m_parentFrame, transactor);
-                    transactorWidgets.put(transactor, widget);
-                    m_loanWidgets.add(widget);
-                }
-                widget.addTransaction(t);
+        LoansLedger ledger = Data.GetInstance().getLoansLedger();
+        ArrayList<CategoryString> transactors = ledger.getTransactors();
+        if (!transactors.equals(new ArrayList(m_loanWidgets.keySet()))) {
+            LinkedHashMap<CategoryString, LoanWidget> widgets = new LinkedHashMap();
+            for (CategoryString transactor : transactors) {
+                LoanWidget widget = m_loanWidgets.get(transactor);
+                widgets.put(transactor, widget == null ? new LoanWidget(m_parentFrame, transactor) : widget);
             }
+            m_loanWidgets = widgets;
+            addLoansToPanel();
         }
-        Collections.sort(m_loanWidgets, new Comparator<LoanWidget>() {
-            @Override
-            public int compare(LoanWidget l1, LoanWidget l2) {
-                CategoryString t1 = l1.getTransactor();
-                CategoryString t2 = l2.getTransactor();
-                int result = t1.getValue().compareTo(t2.getValue());
-                if (result == 0) {
-                    return t1.getCategory().compareTo(t2.getCategory());
-                } else {
-                    return result;
-                }
-            }
-        });
+        for (LoanWidget widget : m_loanWidgets.values()) {
+            widget.update(ledger);
+        }
+        m_loanPanel.revalidate();
+        m_loanPanel.repaint();
     }
 
     /**
@@ -122,9 +113,9 @@ public class LoansList extends JPanel implements Observer {
         cgb.setFill(true, false);
         cgb.setWeight(1, 0);
         cgb.setInsets(10, 10, 10, 10);
-        int i;
-        for (i = 0; i < m_loanWidgets.size(); i++) {
-            cgb.add(m_loanPanel, m_loanWidgets.get(i), 0, i);
+        int i = 0;
+        for (LoanWidget widget : m_loanWidgets.values()) {
+            cgb.add(m_loanPanel, widget, 0, i++);
         }
         JPanel filler = new JPanel();
         filler.setOpaque(false);
@@ -141,8 +132,14 @@ public class LoansList extends JPanel implements Observer {
      */
     @Override
     public void update(Observable o, Object o1) {
+        if (o1 == Data.EVENT.SAVED) {
+            return; // nothing to show
+        }
+        if (o1 == Data.EVENT.RELOADED) { // a new ledger: the old widgets act on old transactions
+            m_loanWidgets.clear();
+            addLoansToPanel();
+        }
         loadData();
-        addLoansToPanel();
     }
 
 }
@@ -1,15 +1,20 @@
 package view.subpanels;
 
 import data.QueryableList;
+import data.RangeSums;
 import java.awt.*;
 import java.awt.event.ItemEvent;
 import java.awt.event.ItemListener;
-import java.text.*;
+import java.time.LocalDate;
 import java.util.*;
 import javafx.util.Pair;
 import javax.swing.*;
 import javax.swing.table.*;
+import model.EpochDay;
+import model.Money;
 import model.Settings;
+import model.Transaction;
+import model.Transaction.TRANSACTIONFIELD;
 import view.HistoryPanel;
 import view.swingextensions.*;
 
@@ -17,27 +22,27 @@ import view.swingextensions.*;
  * This panel creates an overview of a transaction dataset. It calculates the
  * sum per year and month.
  *
- * The dataset is passed along from the parent and can be updated.
+ * The dataset is passed along from the parent and can be updated. The sums can
+ * also be calculated beforehand with calculate(), from a dataset or from
+ * RangeSums, and shown afterwards with setOverview().
  *
  * @author Anaïs Ools
  */
 public class OverviewPanel extends JPanel {
 
-    private QueryableList m_data;
     private int m_year;
     private final HistoryPanel m_parent;
 
     private JLabel m_title;
-    private SmallTable<String, Double> m_yearTable;
-    private SmallTable<Date, Double> m_monthTable;
-    private SmallTable<String, Double> m_monthAvgTable;
+    private SmallTable<String, Money> m_yearTable;
+    private SmallTable<LocalDate, Money> m_monthTable;
+    private SmallTable<String, Money> m_monthAvgTable;
     private JCheckBox m_hideExceptional;
     private JCheckBox m_useDateAdded;
     private JCheckBox m_showHidden;
 
     // Constructors ------------------------------------------------------------
     public OverviewPanel(HistoryPanel parent) {
-        m_data = null;
         m_parent = parent;
         createComponents();
         setPreferences();
@@ -46,13 +51,12 @@ public class OverviewPanel extends JPanel {
     }
 
     public OverviewPanel(HistoryPanel parent, QueryableList data) {
-        m_data = data;
         m_parent = parent;
         createComponents();
         setPreferences();
         setActions();
         createUI();
-        recalculate();
+        setData(data);
     }
 
     // Private functions -------------------------------------------------------
@@ -65,31 +69,17 @@ public class OverviewPanel extends JPanel {
 
         // year table
         m_yearTable = new SmallTable("Year", "Total", false);
-        m_yearTable.add("year", 0.0);
+        m_yearTable.add("year", Money.ZERO);
 
         // month table
         m_monthTable = new SmallTable("Month", "Total", true);
-        try {
-            SimpleDateFormat df = new SimpleDateFormat("dd/MM/yyyy");
-            m_monthTable.add(df.parse("01/01/2016"), 0.0);
-            m_monthTable.add(df.parse("01/02/2016"), 0.0);
-            m_monthTable.add(df.parse("01/03/2016"), 0.0);
-            m_monthTable.add(df.parse("01/04/2016"), 0.0);
-            m_monthTable.add(df.parse("01/05/2016"), 0.0);
-            m_monthTable.add(df.parse("01/06/2016"), 0.0);
-            m_monthTable.add(df.parse("01/07/2016"), 0.0);
-            m_monthTable.add(df.parse("01/08/2016"), 0.0);
-            m_monthTable.add(df.parse("01/09/2016"), 0.0);
-            m_monthTable.add(df.parse("01/10/2016"), 0.0);
-            m_monthTable.add(df.parse("01/11/2016"), 0.0);
-            m_monthTable.add(df.parse("01/12/2016"), 0.0);
-        } catch (ParseException ex) {
-            System.out.println("Could not parse dates in Overview Panel.");
+        for (int i = 1; i <= 12; i++) {
+            m_monthTable.add(LocalDate.of(2016, i, 1), Money.ZERO);
         }
 
         // month average table
         m_monthAvgTable = new SmallTable("Avg/Month", "Total", false);
-        m_monthAvgTable.add("Average", 0.0);
+        m_monthAvgTable.add("Average", Money.ZERO);
 
         m_hideExceptional = new JCheckBox("Hide exceptional");
         m_hideExceptional.setSelected(Settings.GetInstance().getHideExceptional());
@@ -142,31 +132,17 @@ public class OverviewPanel extends JPanel {
     }
 
     /**
-     * Recalculate the statistics and fill the panel.
+     * Fill the panel with calculated statistics.
+     *
+     * @param overview
      */
-    private void recalculate() {
-        // update year
+    private void show(Overview overview) {
         m_yearTable.editLeftValue(0, String.valueOf(m_year));
-        m_yearTable.editRightValue(0, m_data.getTotalPrice());
-
-        // update month
-        double[] months = new double[12];
+        m_yearTable.editRightValue(0, Money.fromUnits(overview.m_total));
         for (int i = 0; i < 12; i++) {
-            if (Settings.GetInstance().getUseDateAdded()) {
-                months[i] = m_data.selectDateAddedByMonth(i).getTotalPrice();
-            } else {
-                months[i] = m_data.selectDatePaidByMonth(i).getTotalPrice();
-            }
-            m_monthTable.editRightValue(i, months[i]);
-        }
-
-        // update month average
-        double average = 0.0;
-        for (double d : months) {
-            average += d;
+            m_monthTable.editRightValue(i, Money.fromUnits(overview.m_months[i]));
         }
-        average /= 12;
-        m_monthAvgTable.editRightValue(0, average);
+        m_monthAvgTable.editRightValue(0, Money.fromUnits(overview.m_total).divide(12));
     }
 
     /**
@@ -203,14 +179,68 @@ public class OverviewPanel extends JPanel {
     }
 
     // Public functions --------------------------------------------------------
+    /**
+     * Calculate the statistics of a dataset. This touches no components, so it
+     * can run on any thread.
+     *
+     * @param data
+     * @param useDateAdded whether to divide the transactions in months by date
+     * added instead of date paid
+     * @return
+     */
+    public static Overview calculate(QueryableList data, boolean useDateAdded) {
+        TRANSACTIONFIELD dateField = useDateAdded ? TRANSACTIONFIELD.DATE_ADDED : TRANSACTIONFIELD.DATE_PAID;
+        Overview overview = new Overview();
+        for (Transaction t : data) {
+            long price = ((Money) t.get(TRANSACTIONFIELD.PRICE)).getUnits();
+            overview.m_total += price;
+            int day = t.getEpochDay(dateField);
+            if (day != EpochDay.NONE) {
+                overview.m_months[EpochDay.month(day)] += price;
+            }
+        }
+        return overview;
+    }
+
+    /**
+     * Calculate the statistics of a year from range sums, with one lookup per
+     * month instead of a pass over the transactions.
+     *
+     * @param sums the range sums over the date field that divides the
+     * transactions in months
+     * @param year
+     * @param hideExceptional whether to leave out exceptional transactions
+     * @return
+     */
+    public static Overview calculate(RangeSums sums, int year, boolean hideExceptional) {
+        Overview overview = new Overview();
+        for (int month = 0; month < 12; month++) {
+            int from = EpochDay.of(year, month + 1, 1);
+            int to = month == 11 ? EpochDay.firstDayOfYear(year + 1) - 1 : EpochDay.of(year, month + 2, 1) - 1;
+            overview.m_months[month] = sums.getProfit(null, from, to, hideExceptional).getUnits();
+            overview.m_total += overview.m_months[month];
+        }
+        return overview;
+    }
+
+    /**
+     * Show statistics that were calculated before.
+     *
+     * @param year the year the statistics are of
+     * @param overview
+     */
+    public void setOverview(int year, Overview overview) {
+        m_year = year;
+        show(overview);
+    }
+
     /**
      * Change the data, setData the panel.
      *
      * @param data the new data
      */
     public void setData(QueryableList data) {
-        m_data = data;
-        recalculate();
+        show(calculate(data, Settings.GetInstance().getUseDateAdded()));
     }
 
     /**
@@ -222,6 +252,16 @@ public class OverviewPanel extends JPanel {
         m_year = year;
     }
 
+    // Public classes ----------------------------------------------------------
+    /**
+     * The sums of a dataset, in minor units.
+     */
+    public static class Overview {
+
+        private long m_total;
+        private final long[] m_months = new long[12];
+    }
+
     // Private classes ---------------------------------------------------------
     private class SmallTable<T, S> extends JPanel {
 
@@ -255,19 +295,14 @@ public class OverviewPanel extends JPanel {
                 m_table.getColumn(m_table.getColumnName(0)).setCellRenderer(new PaddingTableCellRenderer() {
                     @Override
                     public void setValue(Object value) {
-                        if (value.getClass().equals(Date.class)) {
-                            DateFormat df = new SimpleDateFormat("MMMM");
-                            value = df.format((Date) value);
+                        if (value.getClass().equals(LocalDate.class)) {
+                            value = DateLabels.month(((LocalDate) value).getMonthValue() - 1);
                         }
                         super.setValue(value);
                     }
                 });
             }
-            TableRowSorter<TableModel> rowSorter = new TableRowSorter(m_table.getModel());
-            for (int i = 0; i < m_table.getModel().getColumnCount(); i++) {
-                rowSorter.setComparator(i, new TableCellComparator());
-            }
-            m_table.setRowSorter(rowSorter);
+            m_table.setRowSorter(new KeyedRowSorter(m_table.getModel()));
         }
 
         private void createUI() {
@@ -0,0 +1,162 @@
+package view.subpanels;
+
+import java.awt.*;
+import java.util.*;
+import javafx.util.Pair;
+import javax.swing.*;
+import javax.swing.table.*;
+import view.swingextensions.*;
+
+/**
+ * This panel contains a table of statistics, e.g. the income, expenses and
+ * profit per category. The rows are calculated beforehand by the parent, and
+ * can be replaced all at once with setEntries. Each column has a type, by
+ * which its cells are formatted.
+ *
+ * The table model reads its cells from the list of rows directly, so
+ * replacing the rows fires one event instead of one per row.
+ *
+ * @author Anaïs Ools
+ */
+public class StatsTable extends JPanel {
+
+    private final ArrayList<Pair<String, COLUMNTYPE>> m_columns;
+    private final StatsTableModel m_model;
+
+    private JTable m_table;
+    private JScrollPane m_scrollPane;
+
+    public enum COLUMNTYPE {
+
+        STRING, PRICE, DOUBLE, DATE, PERCENTAGE
+    };
+
+    // Constructors ------------------------------------------------------------
+    public StatsTable(ArrayList<Pair<String, COLUMNTYPE>> columns) {
+        this(new ArrayList(), columns);
+    }
+
+    public StatsTable(ArrayList<ArrayList<Object>> entries, ArrayList<Pair<String, COLUMNTYPE>> columns) {
+        m_columns = columns;
+        m_model = new StatsTableModel(entries);
+
+        createComponents();
+        setPreferences();
+        createUI();
+    }
+
+    // Private functions -------------------------------------------------------
+    /**
+     * Initialize all members.
+     */
+    private void createComponents() {
+        m_table = new JTable(m_model);
+        m_scrollPane = new JScrollPane(m_table);
+        m_table.setFillsViewportHeight(true);
+
+        // Make columns sortable
+        m_table.setRowSorter(new KeyedRowSorter(m_model));
+    }
+
+    /**
+     * Set layout-related preferences for the panel.
+     */
+    private void setPreferences() {
+        m_table.setRowHeight(19);
+        m_table.setDefaultRenderer(Object.class, new PaddingTableCellRenderer());
+        for (int i = 0; i < m_columns.size(); i++) {
+            TableColumn column = m_table.getColumnModel().getColumn(i);
+            switch (m_columns.get(i).getValue()) {
+                case STRING:
+                    break;
+                case PRICE:
+                    column.setCellRenderer(new PriceTableCellRenderer(true, true));
+                    break;
+                case DOUBLE:
+                    column.setCellRenderer(new NumberTableCellRenderer(2));
+                    break;
+                case DATE:
+                    column.setCellRenderer(new DateTableCellRenderer());
+                    break;
+                case PERCENTAGE:
+                    column.setCellRenderer(new NumberTableCellRenderer(2, true));
+            }
+        }
+    }
+
+    /**
+     * Add members to the panel, using layout managers.
+     */
+    private void createUI() {
+        this.setLayout(new GridBagLayout());
+        GridBagConstraints c = new GridBagConstraints();
+        c.fill = GridBagConstraints.BOTH;
+        c.weightx = 1;
+        c.weighty = 1;
+        this.add(m_scrollPane, c);
+    }
+
+    // Public functions --------------------------------------------------------
+    /**
+     * Replace all rows of the table. The table keeps its sort order.
+     *
+     * @param entries the rows, with a value for each column
+     */
+    public void setEntries(ArrayList<ArrayList<Object>> entries) {
+        m_model.setEntries(entries);
+    }
+
+    /**
+     * Add a row to the table.
+     *
+     * @param entry a value for each column
+     */
+    public void addEntry(ArrayList<Object> entry) {
+        m_model.addEntry(entry);
+    }
+
+    public int getEntryCount() {
+        return m_model.getRowCount();
+    }
+
+    // Private classes ---------------------------------------------------------
+    private class StatsTableModel extends AbstractTableModel {
+
+        private ArrayList<ArrayList<Object>> m_entries;
+
+        private StatsTableModel(ArrayList<ArrayList<Object>> entries) {
+            m_entries = entries;
+        }
+
+        private void setEntries(ArrayList<ArrayList<Object>> entries) {
+            m_entries = entries;
+            fireTableDataChanged();
+        }
+
+        private void addEntry(ArrayList<Object> entry) {
+            m_entries.add(entry);
+            fireTableRowsInserted(m_entries.size() - 1, m_entries.size() - 1);
+        }
+
+        @Override
+        public int getRowCount() {
+            return m_entries.size();
+        }
+
+        @Override
+        public int getColumnCount() {
+            return m_columns.size();
+        }
+
+        @Override
+        public String getColumnName(int column) {
+            return m_columns.get(column).getKey();
+        }
+
+        @Override
+        public Object getValueAt(int row, int column) {
+            ArrayList<Object> entry = m_entries.get(row);
+            return column < entry.size() ? entry.get(column) : null;
+        }
+    }
+}
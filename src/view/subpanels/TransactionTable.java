@@ -1,11 +1,16 @@
 package view.subpanels;
 
-import data.Data;
+import data.Change;
+import data.ChangeSet;
 import java.awt.*;
 import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.function.Predicate;
 import javafx.util.Pair;
 import javax.swing.*;
 import javax.swing.table.*;
+import model.Money;
+import model.Settings;
 import model.Transaction;
 import model.Transaction.TRANSACTIONFIELD;
 import view.swingextensions.*;
@@ -15,32 +20,44 @@ import view.swingextensions.*;
  * scrollable JPanel for convenient use.
  *
  * The data in it gets passed along from the parent. A function can be used to
- * change or update the data.
+ * change or update the data. Single changes in the data can be applied as
+ * well, which only updates the rows involved.
+ *
+ * The rows are read lazily from the transactions as they scroll into view,
+ * with the rows ahead in the scroll direction read in advance. Selection is
+ * kept by transaction, so it survives a new set of data.
+ *
+ * A FilterBar above the table filters the rows while the user types. Large
+ * tables are filtered on a background thread; a filter run that is overtaken
+ * by a newer one is cancelled.
  *
  * @author Anaïs Ools
  */
 public class TransactionTable extends JPanel {
 
-    private ArrayList<Transaction> m_data;
+    private static final int BACKGROUND_FILTER_SIZE = 10000; // rows from which filtering runs in the background
+
     private final ArrayList<Pair<String, TRANSACTIONFIELD>> m_columns;
 
+    private TransactionTableModel m_model;
     private JTable m_table;
     private JScrollPane m_scrollPane;
+    private KeyedRowSorter m_rowSorter;
+    private FilterBar m_filterBar;
+
+    private FilterBar.Criteria m_criteria;
+    private FilterColumns m_filterColumns; // extracted from the rows, null until needed
+    private FilterWorker m_filterWorker;
+    private int m_lastScrollValue;
 
     // Constructors ------------------------------------------------------------
     public TransactionTable(ArrayList<Pair<String, TRANSACTIONFIELD>> columns) {
-        m_data = new ArrayList();
-        m_columns = columns;
-
-        createComponents();
-        setPreferences();
-        setActions();
-        createUI();
+        this(new ArrayList(), columns);
     }
 
     public TransactionTable(ArrayList<Transaction> data, ArrayList<Pair<String, TRANSACTIONFIELD>> columns) {
-        m_data = data;
         m_columns = columns;
+        m_model = new TransactionTableModel(columns, data);
 
         createComponents();
         setPreferences();
@@ -53,18 +70,20 @@ public class TransactionTable extends JPanel {
      * Initialize all members.
      */
     private void createComponents() {
-        m_table = new JTable(createTableFromData());
+        m_table = new JTable(m_model);
         //m_table.setSelectionMode(ListSelectionModel.SINGLE_SELECTION);
         m_table.removeColumn(m_table.getColumn("ID")); // hide ID column
         m_scrollPane = new JScrollPane(m_table);
         m_table.setFillsViewportHeight(true);
 
         // Make columns sortable
-        TableRowSorter<TableModel> rowSorter = new TableRowSorter(m_table.getModel());
-        for (int i = 0; i < m_table.getModel().getColumnCount(); i++) {
-            rowSorter.setComparator(i, new TableCellComparator());
-        }
-        m_table.setRowSorter(rowSorter);
+        m_rowSorter = new StoreRowSorter();
+        m_table.setRowSorter(m_rowSorter);
+
+        m_filterBar = new FilterBar(criteria -> {
+            m_criteria = criteria;
+            applyFilter();
+        });
     }
 
     /**
@@ -100,6 +119,14 @@ public class TransactionTable extends JPanel {
      * Set actions for members of the panel.
      */
     private void setActions() {
+        // read the rows ahead in the scroll direction
+        m_scrollPane.getVerticalScrollBar().addAdjustmentListener(ae -> {
+            int direction = Integer.signum(ae.getValue() - m_lastScrollValue);
+            m_lastScrollValue = ae.getValue();
+            if (direction != 0) {
+                SwingUtilities.invokeLater(() -> readAhead(direction));
+            }
+        });
 
     }
 
@@ -111,96 +138,154 @@ public class TransactionTable extends JPanel {
         GridBagConstraints c = new GridBagConstraints();
         c.fill = GridBagConstraints.BOTH;
         c.weightx = 1;
+        c.gridy = 0;
+        c.insets = new Insets(0, 0, 5, 0);
+        this.add(m_filterBar, c);
         c.weighty = 1;
+        c.gridy = 1;
+        c.insets = new Insets(0, 0, 0, 0);
         this.add(m_scrollPane, c);
     }
 
     /**
-     * Create a TableModel from the given data and the given list of columns.
+     * Get a column based on its name.
      *
-     * @return a tablemodel filled with data
-     */
-    private DefaultTableModel createTableFromData() {
-        // Create headers
-        String[] columnNames = new String[m_columns.size() + 1];
-        columnNames[0] = "ID";
-        for (int i = 0; i < m_columns.size(); i++) {
-            columnNames[i + 1] = m_columns.get(i).getKey();
-        }
-        DefaultTableModel tableModel = new DefaultTableModel(columnNames, 0) {
-            @Override
-            public boolean isCellEditable(int row, int column) {
-                return false; // make cells uneditable
-            }
-
-            @Override
-            public Class<?> getColumnClass(int columnIndex) {
-                String columnName = this.getColumnName(columnIndex);
-                if (columnName.equals("Exceptional")) {
-                    return Boolean.class;
-                }
-                return super.getColumnClass(columnIndex);
+     * @param header the name of the column
+     * @return the index of the column
+     */
+    private TableColumn getColumn(String columnName) {
+        for (int i = 0; i < m_table.getColumnCount(); i++) {
+            if (m_table.getColumnName(i).equals(columnName)) {
+                return m_table.getColumnModel().getColumn(i);
             }
-        };
-
-        // Create data
-        insertData(tableModel);
+        }
+        return null;
+    }
 
-        return tableModel;
+    /**
+     * Read the rows of one screen beyond the visible rows into the row cache.
+     *
+     * @param direction 1 when scrolling down, -1 when scrolling up
+     */
+    private void readAhead(int direction) {
+        Rectangle visible = m_table.getVisibleRect();
+        int first = m_table.rowAtPoint(new Point(0, visible.y));
+        int last = m_table.rowAtPoint(new Point(0, visible.y + visible.height - 1));
+        if (first < 0) {
+            return;
+        }
+        if (last < 0) {
+            last = m_table.getRowCount() - 1;
+        }
+        int count = last - first + 1;
+        int from = direction > 0 ? last + 1 : Math.max(0, first - count);
+        int to = direction > 0 ? Math.min(m_table.getRowCount() - 1, last + count) : first - 1;
+        for (int viewRow = from; viewRow <= to; viewRow++) {
+            int modelRow = m_table.convertRowIndexToModel(viewRow);
+            m_model.prefetch(modelRow, modelRow);
+        }
     }
 
     /**
-     * Inserts the data from the m_data member into the given TableModel.
+     * Select the rows of some transactions, if they are in the table.
      *
-     * @param tm
-     */
-    private void insertData(DefaultTableModel tm) {
-        for (Transaction t : m_data) {
-            ArrayList<Object> dataObject = new ArrayList();
-            dataObject.add(t.getID());
-            for (Pair<String, TRANSACTIONFIELD> p : m_columns) {
-                TRANSACTIONFIELD fieldType = p.getValue();
-                Object field = t.get(fieldType);
-                if (field != null && field.getClass().equals(model.CategoryString.class)) {
-                    dataObject.add(((model.CategoryString) field).getValue());
-                } else {
-                    dataObject.add(field);
+     * @param transactions
+     */
+    private void select(Transaction[] transactions) {
+        if (transactions == null) {
+            return;
+        }
+        Set<Transaction> selected = Collections.newSetFromMap(new IdentityHashMap());
+        selected.addAll(Arrays.asList(transactions));
+        ArrayList<Transaction> rows = m_model.getRows();
+        for (int row = 0; row < rows.size() && !selected.isEmpty(); row++) {
+            if (selected.remove(rows.get(row))) {
+                int viewRow = m_table.convertRowIndexToView(row);
+                if (viewRow >= 0) {
+                    m_table.addRowSelectionInterval(viewRow, viewRow);
                 }
             }
-            tm.addRow(dataObject.toArray());
         }
     }
 
     /**
-     * Get a column based on its name.
-     *
-     * @param header the name of the column
-     * @return the index of the column
+     * Filter the rows on the current criteria. Small tables are filtered right
+     * away, large tables on a background thread. A running filter is cancelled
+     * first, since its result would be outdated.
      */
-    private TableColumn getColumn(String columnName) {
-        for (int i = 0; i < m_table.getColumnCount(); i++) {
-            if (m_table.getColumnName(i).equals(columnName)) {
-                return m_table.getColumnModel().getColumn(i);
+    private void applyFilter() {
+        if (m_filterWorker != null) {
+            m_filterWorker.cancel(true);
+            m_filterWorker = null;
+        }
+        if (m_criteria == null || m_criteria.isEmpty()) {
+            m_rowSorter.setRowMask(null);
+            return;
+        }
+        if (m_model.getRowCount() < BACKGROUND_FILTER_SIZE) {
+            if (m_filterColumns == null) {
+                m_filterColumns = FilterColumns.extract(m_model.getRows(), null);
             }
+            installFilter(m_filterColumns.filter(m_criteria, null));
+        } else {
+            // the worker gets its own copy of the rows, since they may change while it runs
+            ArrayList<Transaction> rows = m_filterColumns == null ? new ArrayList(m_model.getRows()) : null;
+            m_filterWorker = new FilterWorker(rows, m_filterColumns, m_criteria);
+            m_filterWorker.execute();
         }
-        return null;
     }
 
     /**
-     * Update the table to the m_data member, in case this has changed.
+     * Only show the rows of which the model index is set.
+     *
+     * @param rows
      */
-    private void updateData() {
-        DefaultTableModel tm = (DefaultTableModel) m_table.getModel();
-        for (int i = tm.getRowCount() - 1; i >= 0; i--) {
-            tm.removeRow(i);
-        }
-        insertData(tm);
+    private void installFilter(BitSet rows) {
+        m_rowSorter.setRowMask(rows);
     }
 
     // Public functions --------------------------------------------------------
+    /**
+     * Show a new list of transactions. The table uses the list itself, so it
+     * should not be changed afterwards by anyone else.
+     *
+     * @param data
+     */
     public void setData(ArrayList<Transaction> data) {
-        m_data = data;
-        updateData();
+        Transaction[] selected = getSelectedTransactions();
+        m_model.setRows(data);
+        m_filterColumns = null;
+        applyFilter();
+        select(selected);
+    }
+
+    /**
+     * Apply the changes in the data to the table. Only the rows of the changed
+     * transactions are inserted, updated or removed, and the filter is applied
+     * once afterwards.
+     *
+     * @param changes
+     * @param belongs tells whether a changed transaction belongs in the table
+     * after the change
+     */
+    public void applyChanges(ChangeSet changes, Predicate<Transaction> belongs) {
+        for (Change change : changes.getChanges()) {
+            Transaction t = change.getTransaction();
+            int row = m_model.indexOf(t);
+            if (change.getType() == Change.TYPE.DELETED || !belongs.test(t)) {
+                if (row >= 0) {
+                    m_model.remove(row);
+                }
+            } else if (row < 0) {
+                m_model.insert(t);
+            } else {
+                m_model.update(row);
+            }
+        }
+        m_filterColumns = null;
+        if (m_criteria != null && !m_criteria.isEmpty()) {
+            applyFilter();
+        }
     }
 
     /**
@@ -220,8 +305,7 @@ public class TransactionTable extends JPanel {
         Transaction[] transactions = new Transaction[selectedRows.length];
         for (int i = 0; i < selectedRows.length; i++) {
             int selectedModelRow = m_table.convertRowIndexToModel(selectedRows[i]);
-            long id = (long) m_table.getModel().getValueAt(selectedModelRow, 0);
-            transactions[i] = Data.GetInstance().getTransactions().get(id);
+            transactions[i] = m_model.getTransaction(selectedModelRow);
         }
         return transactions;
     }
@@ -236,4 +320,135 @@ public class TransactionTable extends JPanel {
             System.out.println("Exception happens here :o");
         }
     }
+
+    // Private classes ---------------------------------------------------------
+    /**
+     * The values of the rows that the filter looks at, extracted once per data
+     * change so filtering does not have to touch the transactions.
+     */
+    private static class FilterColumns {
+
+        private final String[] m_text;
+        private final long[] m_price;
+        private final int[] m_day;
+        private final boolean[] m_exceptional;
+
+        private FilterColumns(int size) {
+            m_text = new String[size];
+            m_price = new long[size];
+            m_day = new int[size];
+            m_exceptional = new boolean[size];
+        }
+
+        /**
+         * Extract the filter values of a list of transactions.
+         *
+         * @param data
+         * @param worker the worker to check for cancellation, or null
+         * @return the values, or null if the worker was cancelled
+         */
+        private static FilterColumns extract(ArrayList<Transaction> data, SwingWorker worker) {
+            TRANSACTIONFIELD dateField = Settings.GetInstance().getUseDateAdded() ? TRANSACTIONFIELD.DATE_ADDED : TRANSACTIONFIELD.DATE_PAID;
+            FilterColumns fc = new FilterColumns(data.size());
+            StringBuilder sb = new StringBuilder();
+            for (int i = 0; i < data.size(); i++) {
+                if (worker != null && (i & 1023) == 0 && worker.isCancelled()) {
+                    return null;
+                }
+                Transaction t = data.get(i);
+                sb.setLength(0);
+                sb.append(t.get(TRANSACTIONFIELD.DESCRIPTION)).append('\n')
+                        .append(t.get(TRANSACTIONFIELD.CATEGORY)).append('\n')
+                        .append(t.get(TRANSACTIONFIELD.TRANSACTOR)).append('\n')
+                        .append(t.get(TRANSACTIONFIELD.PAYMENT_METHOD));
+                fc.m_text[i] = sb.toString().toLowerCase();
+                Money price = (Money) t.get(TRANSACTIONFIELD.PRICE);
+                fc.m_price[i] = price == null ? 0 : price.getUnits();
+                fc.m_day[i] = t.getEpochDay(dateField);
+                fc.m_exceptional[i] = t.getFlag(TRANSACTIONFIELD.EXCEPTIONAL);
+            }
+            return fc;
+        }
+
+        /**
+         * Find the rows that match the criteria.
+         *
+         * @param criteria
+         * @param worker the worker to check for cancellation, or null
+         * @return the matching rows, or null if the worker was cancelled
+         */
+        private BitSet filter(FilterBar.Criteria criteria, SwingWorker worker) {
+            BitSet rows = new BitSet(m_text.length);
+            for (int i = 0; i < m_text.length; i++) {
+                if (worker != null && (i & 1023) == 0 && worker.isCancelled()) {
+                    return null;
+                }
+                if (criteria.matches(m_text[i], m_price[i], m_day[i], m_exceptional[i])) {
+                    rows.set(i);
+                }
+            }
+            return rows;
+        }
+    }
+
+    /**
+     * Row sorter that reads the values to sort on from the transactions, so
+     * sorting does not fill the row cache of the model.
+     */
+    private class StoreRowSorter extends KeyedRowSorter {
+
+        private StoreRowSorter() {
+            super(m_model);
+        }
+
+        @Override
+        protected Object getValue(int row, int column) {
+            return m_model.getStoreValue(row, column);
+        }
+    }
+
+    /**
+     * Filters the rows on a background thread, and installs the result on the
+     * EDT unless a newer filter has been started in the meantime.
+     */
+    private class FilterWorker extends SwingWorker<BitSet, Void> {
+
+        private final ArrayList<Transaction> m_workerData;
+        private final FilterBar.Criteria m_workerCriteria;
+        private FilterColumns m_workerColumns;
+
+        private FilterWorker(ArrayList<Transaction> data, FilterColumns columns, FilterBar.Criteria criteria) {
+            m_workerData = data;
+            m_workerColumns = columns;
+            m_workerCriteria = criteria;
+        }
+
+        @Override
+        protected BitSet doInBackground() {
+            if (m_workerColumns == null) {
+                m_workerColumns = FilterColumns.extract(m_workerData, this);
+                if (m_workerColumns == null) {
+                    return null;
+                }
+            }
+            return m_workerColumns.filter(m_workerCriteria, this);
+        }
+
+        @Override
+        protected void done() {
+            if (isCancelled() || m_filterWorker != this) {
+                return; // outdated
+            }
+            m_filterWorker = null;
+            m_filterColumns = m_workerColumns;
+            try {
+                BitSet rows = get();
+                if (rows != null) {
+                    installFilter(rows);
+                }
+            } catch (InterruptedException | ExecutionException ex) {
+                System.out.println("Filtering the table failed: " + ex.getMessage());
+            }
+        }
+    }
 }
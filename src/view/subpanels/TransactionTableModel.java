@@ -0,0 +1,204 @@
+package view.subpanels;
+
+import java.util.*;
+import javafx.util.Pair;
+import javax.swing.table.AbstractTableModel;
+import model.CategoryString;
+import model.Transaction;
+import model.Transaction.TRANSACTIONFIELD;
+
+/**
+ * Table model that reads its cells from a list of transactions. The first
+ * column holds the ID of the transaction, the other columns hold the requested
+ * fields. CategoryString fields are shown by their value only.
+ *
+ * The transactions are the keys of the rows. The cells of a row are only read
+ * from its transaction when the row is shown, and then kept in a row cache of
+ * bounded size, so the memory used does not grow with the number of rows.
+ * Sorting and filtering read from the transactions directly and do not fill
+ * the cache.
+ *
+ * Single transactions can be inserted, updated and removed, which fires an
+ * event for that row only. The model keeps the row of each transaction, so the
+ * row of a changed transaction is found without searching the list.
+ *
+ * @author Anaïs Ools
+ */
+public class TransactionTableModel extends AbstractTableModel {
+
+    // Members & constructors --------------------------------------------------
+    private static final int MAX_CACHED_ROWS = 2000;
+
+    private final ArrayList<Pair<String, TRANSACTIONFIELD>> m_columns;
+    private final LinkedHashMap<Transaction, Object[]> m_rowCache;
+    private ArrayList<Transaction> m_rows;
+    private IdentityHashMap<Transaction, Integer> m_positions; // the row of each transaction
+
+    public TransactionTableModel(ArrayList<Pair<String, TRANSACTIONFIELD>> columns, ArrayList<Transaction> rows) {
+        m_columns = columns;
+        m_rowCache = new LinkedHashMap<Transaction, Object[]>(256, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Transaction, Object[]> eldest) {
+                return size() > MAX_CACHED_ROWS;
+            }
+        };
+        setRows(rows);
+    }
+
+    // Private functions -------------------------------------------------------
+    /**
+     * Get the cells of a row, reading them from the transaction if the row is
+     * not cached.
+     *
+     * @param row
+     * @return
+     */
+    private Object[] getCells(int row) {
+        Transaction t = m_rows.get(row);
+        Object[] cells = m_rowCache.get(t);
+        if (cells == null) {
+            cells = new Object[m_columns.size() + 1];
+            for (int column = 0; column < cells.length; column++) {
+                cells[column] = getStoreValue(row, column);
+            }
+            m_rowCache.put(t, cells);
+        }
+        return cells;
+    }
+
+    // Public functions --------------------------------------------------------
+    /**
+     * Replace all rows. The list is used as is, not copied.
+     *
+     * @param rows
+     */
+    public final void setRows(ArrayList<Transaction> rows) {
+        m_rows = rows;
+        m_positions = new IdentityHashMap(rows.size() * 2);
+        for (int row = 0; row < rows.size(); row++) {
+            m_positions.put(rows.get(row), row);
+        }
+        m_rowCache.clear();
+        fireTableDataChanged();
+    }
+
+    public ArrayList<Transaction> getRows() {
+        return m_rows;
+    }
+
+    public Transaction getTransaction(int row) {
+        return m_rows.get(row);
+    }
+
+    /**
+     * Get the row of a transaction.
+     *
+     * @param t
+     * @return the row, or -1 if the transaction is not in the table
+     */
+    public int indexOf(Transaction t) {
+        Integer row = m_positions.get(t);
+        return row == null ? -1 : row;
+    }
+
+    /**
+     * Add a transaction as the last row.
+     *
+     * @param t
+     */
+    public void insert(Transaction t) {
+        m_rows.add(t);
+        m_positions.put(t, m_rows.size() - 1);
+        fireTableRowsInserted(m_rows.size() - 1, m_rows.size() - 1);
+    }
+
+    /**
+     * Tell the table that a row has changed.
+     *
+     * @param row
+     */
+    public void update(int row) {
+        m_rowCache.remove(m_rows.get(row));
+        fireTableRowsUpdated(row, row);
+    }
+
+    /**
+     * Remove a row. The rows after it move up.
+     *
+     * @param row
+     */
+    public void remove(int row) {
+        Transaction t = m_rows.remove(row);
+        m_positions.remove(t);
+        for (int i = row; i < m_rows.size(); i++) {
+            m_positions.put(m_rows.get(i), i);
+        }
+        m_rowCache.remove(t);
+        fireTableRowsDeleted(row, row);
+    }
+
+    /**
+     * Read rows into the row cache before they are shown, e.g. the rows just
+     * below the visible part of the table while scrolling down.
+     *
+     * @param first the first row
+     * @param last the last row, inclusive
+     */
+    public void prefetch(int first, int last) {
+        for (int row = Math.max(0, first); row <= last && row < m_rows.size(); row++) {
+            getCells(row);
+        }
+    }
+
+    /**
+     * Read a cell from the transaction itself, without using the row cache.
+     *
+     * @param row
+     * @param column
+     * @return
+     */
+    public Object getStoreValue(int row, int column) {
+        Transaction t = m_rows.get(row);
+        if (column == 0) {
+            return t.getID();
+        }
+        Object value = t.get(m_columns.get(column - 1).getValue());
+        if (value instanceof CategoryString) {
+            return ((CategoryString) value).getValue();
+        }
+        return value;
+    }
+
+    @Override
+    public int getRowCount() {
+        return m_rows.size();
+    }
+
+    @Override
+    public int getColumnCount() {
+        return m_columns.size() + 1;
+    }
+
+    @Override
+    public String getColumnName(int column) {
+        return column == 0 ? "ID" : m_columns.get(column - 1).getKey();
+    }
+
+    @Override
+    public Class<?> getColumnClass(int column) {
+        if (column > 0 && m_columns.get(column - 1).getValue() == TRANSACTIONFIELD.EXCEPTIONAL) {
+            return Boolean.class;
+        }
+        return Object.class;
+    }
+
+    @Override
+    public boolean isCellEditable(int row, int column) {
+        return false;
+    }
+
+    @Override
+    public Object getValueAt(int row, int column) {
+        return getCells(row)[column];
+    }
+}
@@ -59,11 +59,7 @@ public class CustomTable extends JPanel {
         m_table.setFillsViewportHeight(true);
 
         // Make columns sortable
-        TableRowSorter<TableModel> rowSorter = new TableRowSorter(m_table.getModel());
-        for (int i = 0; i < m_table.getModel().getColumnCount(); i++) {
-            rowSorter.setComparator(i, new TableCellComparator());
-        }
-        m_table.setRowSorter(rowSorter);
+        m_table.setRowSorter(new KeyedRowSorter(m_table.getModel()));
     }
 
     /**
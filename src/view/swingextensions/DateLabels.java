@@ -0,0 +1,83 @@
+package view.swingextensions;
+
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.util.concurrent.ConcurrentHashMap;
+import model.EpochDay;
+
+/**
+ * Shared labels for dates in tables, like "Monday, 01/02/2016" and "February".
+ * The names of the weekdays and months are formatted once, in the default
+ * locale. The label of a day is built the first time it is shown and then
+ * kept by epoch day, so repainting a table does no formatting work.
+ *
+ * All functions are thread-safe.
+ *
+ * @author Anaïs Ools
+ */
+public final class DateLabels {
+
+    private static final int MAX_CACHED = 20000;
+    private static final String[] WEEKDAYS = new String[7]; // Monday first
+    private static final String[] MONTHS = new String[12];
+    private static final ConcurrentHashMap<Integer, String> m_labels = new ConcurrentHashMap();
+
+    static {
+        DateTimeFormatter weekday = DateTimeFormatter.ofPattern("EEEE");
+        DateTimeFormatter month = DateTimeFormatter.ofPattern("MMMM");
+        LocalDate monday = LocalDate.of(2024, 1, 1);
+        for (int i = 0; i < WEEKDAYS.length; i++) {
+            WEEKDAYS[i] = weekday.format(monday.plusDays(i));
+        }
+        for (int i = 0; i < MONTHS.length; i++) {
+            MONTHS[i] = month.format(monday.withMonth(i + 1));
+        }
+    }
+
+    private DateLabels() { // only static functions
+    }
+
+    /**
+     * Get the name of the weekday of an epoch day.
+     *
+     * @param day
+     * @return
+     */
+    public static String weekday(int day) {
+        return WEEKDAYS[Math.floorMod(day + 3, 7)]; // 01/01/1970 was a Thursday
+    }
+
+    /**
+     * Get the name of a month.
+     *
+     * @param month the month, from 0 (January) to 11 (December)
+     * @return
+     */
+    public static String month(int month) {
+        return MONTHS[month];
+    }
+
+    /**
+     * Get the label of an epoch day: its weekday and the date as dd/MM/yyyy.
+     *
+     * @param day
+     * @return the label, or an empty string if the day is NONE
+     */
+    public static String label(int day) {
+        if (day == EpochDay.NONE) {
+            return "";
+        }
+        String s = m_labels.get(day);
+        if (s == null) {
+            s = weekday(day) + ", " + EpochDay.format(day);
+            if (m_labels.size() < MAX_CACHED) {
+                m_labels.put(day, s);
+            }
+        }
+        return s;
+    }
+
+    public static String label(LocalDate date) {
+        return date == null ? "" : label((int) date.toEpochDay());
+    }
+}
@@ -1,33 +1,28 @@
 package view.swingextensions;
 
 import java.awt.Component;
-import java.text.DateFormat;
-import java.text.SimpleDateFormat;
-import java.util.Date;
+import java.time.LocalDate;
 import javax.swing.JTable;
 import javax.swing.SwingConstants;
 
 /**
  * A cellrenderer which adds padding to a cell and displays its contents as a
- * date.
+ * date. The labels come from the shared DateLabels cache.
  *
  * @author Anaïs Ools
  */
 public class DateTableCellRenderer extends PaddingTableCellRenderer {
 
-    DateFormat df;
-
     public DateTableCellRenderer() {
         setHorizontalAlignment(SwingConstants.RIGHT);
-        df = new SimpleDateFormat("EEEE, dd/MM/yyyy");
     }
 
     @Override
     public void setValue(Object value) {
         if (value == null) {
             value = "";
-        } else if (value.getClass().equals(Date.class)) {
-            value = df.format((Date) value);
+        } else if (value.getClass().equals(LocalDate.class)) {
+            value = DateLabels.label((LocalDate) value);
         }
         super.setValue(value);
     }
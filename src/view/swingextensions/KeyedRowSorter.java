@@ -0,0 +1,551 @@
+package view.swingextensions;
+
+import java.lang.reflect.Array;
+import java.text.CollationKey;
+import java.text.Collator;
+import java.time.LocalDate;
+import java.util.*;
+import javax.swing.RowSorter;
+import javax.swing.SortOrder;
+import javax.swing.table.TableModel;
+import model.Money;
+
+/**
+ * Row sorter for tables that computes a sort key for every cell of a column
+ * once, and then sorts an array of row indices on these keys. Prices, dates and
+ * numbers get primitive keys, strings get a CollationKey that ignores case.
+ * The keys of a column are computed the first time it is sorted after the
+ * data changed.
+ *
+ * The type of a column is taken from its first value that is not null or
+ * empty. Values of another type, null values and empty strings are sorted
+ * last, in both directions.
+ *
+ * Rows can be hidden with a row mask: a BitSet of the model rows to show. The
+ * mask follows inserted and deleted rows, and rows that are inserted are
+ * hidden until a new mask is set. When all rows change, the mask is cleared.
+ *
+ * When rows are inserted or deleted, the keys of the other rows are kept and
+ * the inserted rows are put in place in the sorted rows, without sorting
+ * again.
+ *
+ * @author Anaïs Ools
+ */
+public class KeyedRowSorter extends RowSorter<TableModel> {
+
+    // Members & constructors --------------------------------------------------
+    private static final int MAX_SORT_KEYS = 3;
+
+    private final TableModel m_model;
+    private final Collator m_collator;
+    private List<SortKey> m_sortKeys;
+    private ColumnKeys[] m_keys; // per column, null until needed
+    private BitSet m_rowMask;
+    private int[] m_viewToModel; // null if the view equals the model
+    private int[] m_modelToView;
+
+    public KeyedRowSorter(TableModel model) {
+        m_model = model;
+        m_collator = Collator.getInstance();
+        m_collator.setStrength(Collator.SECONDARY); // ignore case
+        m_sortKeys = Collections.emptyList();
+        m_keys = new ColumnKeys[model.getColumnCount()];
+    }
+
+    // Protected functions -----------------------------------------------------
+    /**
+     * Get the value of a cell to sort on. By default this is the value in the
+     * model.
+     *
+     * @param row
+     * @param column
+     * @return
+     */
+    protected Object getValue(int row, int column) {
+        return m_model.getValueAt(row, column);
+    }
+
+    // Private functions -------------------------------------------------------
+    private ColumnKeys getKeys(int column) {
+        if (m_keys[column] == null) {
+            m_keys[column] = new ColumnKeys(column);
+        }
+        return m_keys[column];
+    }
+
+    /**
+     * Sort and filter the rows again, and tell the listeners.
+     */
+    private void sort() {
+        int[] oldViewToModel = getViewToModel();
+        int rows = m_model.getRowCount();
+        if (m_sortKeys.isEmpty() && m_rowMask == null) {
+            m_viewToModel = null;
+            m_modelToView = null;
+        } else {
+            int[] view = new int[m_rowMask == null ? rows : m_rowMask.cardinality()];
+            int size = 0;
+            for (int row = 0; row < rows; row++) {
+                if (m_rowMask == null || m_rowMask.get(row)) {
+                    view[size++] = row;
+                }
+            }
+            view = size == view.length ? view : Arrays.copyOf(view, size); // rows beyond the mask
+            if (!m_sortKeys.isEmpty()) {
+                ColumnKeys[] keys = getSortColumnKeys();
+                int[] signs = getSortSigns();
+                mergeSort(view, new int[view.length], 0, view.length, keys, signs);
+            }
+            setView(view);
+        }
+        fireRowSorterChanged(oldViewToModel);
+    }
+
+    /**
+     * Set the model rows in view order, and map the model rows back to them.
+     *
+     * @param view
+     */
+    private void setView(int[] view) {
+        m_viewToModel = view;
+        m_modelToView = new int[m_model.getRowCount()];
+        Arrays.fill(m_modelToView, -1);
+        for (int i = 0; i < view.length; i++) {
+            m_modelToView[view[i]] = i;
+        }
+    }
+
+    private ColumnKeys[] getSortColumnKeys() {
+        ColumnKeys[] keys = new ColumnKeys[m_sortKeys.size()];
+        for (int i = 0; i < keys.length; i++) {
+            keys[i] = getKeys(m_sortKeys.get(i).getColumn());
+        }
+        return keys;
+    }
+
+    private int[] getSortSigns() {
+        int[] signs = new int[m_sortKeys.size()];
+        for (int i = 0; i < signs.length; i++) {
+            signs[i] = m_sortKeys.get(i).getSortOrder() == SortOrder.DESCENDING ? -1 : 1;
+        }
+        return signs;
+    }
+
+    /**
+     * Shift the bits of the row mask from a row on.
+     *
+     * @param first the first row to shift
+     * @param shift the number of rows to shift up, or down when negative
+     */
+    private void shiftRowMask(int first, int shift) {
+        BitSet mask = m_rowMask.get(0, first);
+        for (int row = m_rowMask.nextSetBit(first); row >= 0; row = m_rowMask.nextSetBit(row + 1)) {
+            if (row + shift >= first) {
+                mask.set(row + shift);
+            }
+        }
+        m_rowMask = mask;
+    }
+
+    /**
+     * Put the inserted rows in place in the sorted rows. The other rows keep
+     * their order.
+     *
+     * @param firstRow
+     * @param endRow
+     */
+    private void insertIntoView(int firstRow, int endRow) {
+        int count = endRow - firstRow + 1;
+        int[] view = new int[m_viewToModel.length + count];
+        int size = 0;
+        for (int row : m_viewToModel) {
+            view[size++] = row >= firstRow ? row + count : row;
+        }
+        ColumnKeys[] keys = getSortColumnKeys();
+        int[] signs = getSortSigns();
+        for (int row = firstRow; row <= endRow; row++) {
+            if (m_rowMask != null && !m_rowMask.get(row)) {
+                continue;
+            }
+            int lo = 0;
+            int hi = size;
+            while (lo < hi) {
+                int mid = (lo + hi) >>> 1;
+                if (compare(view[mid], row, keys, signs) < 0) {
+                    lo = mid + 1;
+                } else {
+                    hi = mid;
+                }
+            }
+            System.arraycopy(view, lo, view, lo + 1, size - lo);
+            view[lo] = row;
+            size++;
+        }
+        setView(size == view.length ? view : Arrays.copyOf(view, size));
+    }
+
+    /**
+     * Take the deleted rows out of the sorted rows. The other rows keep their
+     * order.
+     *
+     * @param firstRow
+     * @param endRow
+     */
+    private void deleteFromView(int firstRow, int endRow) {
+        int count = endRow - firstRow + 1;
+        int[] view = new int[m_viewToModel.length];
+        int size = 0;
+        for (int row : m_viewToModel) {
+            if (row > endRow) {
+                view[size++] = row - count;
+            } else if (row < firstRow) {
+                view[size++] = row;
+            }
+        }
+        setView(Arrays.copyOf(view, size));
+    }
+
+    private int[] getViewToModel() {
+        if (m_viewToModel != null) {
+            return m_viewToModel.clone();
+        }
+        int[] identity = new int[m_model.getRowCount()];
+        for (int i = 0; i < identity.length; i++) {
+            identity[i] = i;
+        }
+        return identity;
+    }
+
+    private static int compare(int a, int b, ColumnKeys[] keys, int[] signs) {
+        for (int i = 0; i < keys.length; i++) {
+            int c = keys[i].compare(a, b, signs[i]);
+            if (c != 0) {
+                return c;
+            }
+        }
+        return Integer.compare(a, b);
+    }
+
+    /**
+     * Stable merge sort of row indices, from index lo (inclusive) to hi
+     * (exclusive).
+     */
+    private static void mergeSort(int[] rows, int[] tmp, int lo, int hi, ColumnKeys[] keys, int[] signs) {
+        if (hi - lo < 16) { // insertion sort for small ranges
+            for (int i = lo + 1; i < hi; i++) {
+                int row = rows[i];
+                int j = i - 1;
+                while (j >= lo && compare(rows[j], row, keys, signs) > 0) {
+                    rows[j + 1] = rows[j];
+                    j--;
+                }
+                rows[j + 1] = row;
+            }
+            return;
+        }
+        int mid = (lo + hi) >>> 1;
+        mergeSort(rows, tmp, lo, mid, keys, signs);
+        mergeSort(rows, tmp, mid, hi, keys, signs);
+        if (compare(rows[mid - 1], rows[mid], keys, signs) <= 0) {
+            return; // already in order
+        }
+        System.arraycopy(rows, lo, tmp, lo, hi - lo);
+        int i = lo;
+        int j = mid;
+        for (int k = lo; k < hi; k++) {
+            if (j >= hi || (i < mid && compare(tmp[i], tmp[j], keys, signs) <= 0)) {
+                rows[k] = tmp[i++];
+            } else {
+                rows[k] = tmp[j++];
+            }
+        }
+    }
+
+    /**
+     * Copy an array with a gap of empty elements.
+     *
+     * @param array an array, or null
+     * @param first the index of the gap
+     * @param count the length of the gap
+     * @return
+     */
+    private static Object insertGap(Object array, int first, int count) {
+        if (array == null) {
+            return null;
+        }
+        int length = Array.getLength(array);
+        Object result = Array.newInstance(array.getClass().getComponentType(), length + count);
+        System.arraycopy(array, 0, result, 0, first);
+        System.arraycopy(array, first, result, first + count, length - first);
+        return result;
+    }
+
+    /**
+     * Copy an array without a range of elements.
+     *
+     * @param array an array, or null
+     * @param first the first index to leave out
+     * @param count the number of elements to leave out
+     * @return
+     */
+    private static Object removeRange(Object array, int first, int count) {
+        if (array == null) {
+            return null;
+        }
+        int length = Array.getLength(array);
+        Object result = Array.newInstance(array.getClass().getComponentType(), length - count);
+        System.arraycopy(array, 0, result, 0, first);
+        System.arraycopy(array, first + count, result, first, length - first - count);
+        return result;
+    }
+
+    // Public functions --------------------------------------------------------
+    /**
+     * Only show some rows of the model.
+     *
+     * @param mask the model rows to show, or null to show all rows
+     */
+    public void setRowMask(BitSet mask) {
+        m_rowMask = mask;
+        sort();
+    }
+
+    @Override
+    public TableModel getModel() {
+        return m_model;
+    }
+
+    @Override
+    public void toggleSortOrder(int column) {
+        ArrayList<SortKey> keys = new ArrayList(m_sortKeys);
+        SortOrder order = SortOrder.ASCENDING;
+        for (int i = 0; i < keys.size(); i++) {
+            if (keys.get(i).getColumn() == column) {
+                order = keys.get(i).getSortOrder() == SortOrder.ASCENDING ? SortOrder.DESCENDING : SortOrder.ASCENDING;
+                keys.remove(i);
+                break;
+            }
+        }
+        keys.add(0, new SortKey(column, order));
+        setSortKeys(keys.size() > MAX_SORT_KEYS ? keys.subList(0, MAX_SORT_KEYS) : keys);
+    }
+
+    @Override
+    public int convertRowIndexToModel(int index) {
+        return m_viewToModel == null ? index : m_viewToModel[index];
+    }
+
+    @Override
+    public int convertRowIndexToView(int index) {
+        if (m_modelToView == null) {
+            return index;
+        }
+        return index < 0 || index >= m_modelToView.length ? -1 : m_modelToView[index];
+    }
+
+    @Override
+    public void setSortKeys(List<? extends SortKey> keys) {
+        m_sortKeys = keys == null ? Collections.emptyList() : Collections.unmodifiableList(new ArrayList(keys));
+        fireSortOrderChanged();
+        sort();
+    }
+
+    @Override
+    public List<? extends SortKey> getSortKeys() {
+        return m_sortKeys;
+    }
+
+    @Override
+    public int getViewRowCount() {
+        return m_viewToModel == null ? m_model.getRowCount() : m_viewToModel.length;
+    }
+
+    @Override
+    public int getModelRowCount() {
+        return m_model.getRowCount();
+    }
+
+    @Override
+    public void modelStructureChanged() {
+        m_keys = new ColumnKeys[m_model.getColumnCount()];
+        m_sortKeys = Collections.emptyList();
+        m_rowMask = null;
+        sort();
+    }
+
+    /**
+     * All rows changed, so the row mask no longer applies: it is cleared.
+     */
+    @Override
+    public void allRowsChanged() {
+        m_keys = new ColumnKeys[m_model.getColumnCount()];
+        m_rowMask = null;
+        sort();
+    }
+
+    @Override
+    public void rowsInserted(int firstRow, int endRow) {
+        int count = endRow - firstRow + 1;
+        if (m_rowMask != null) {
+            shiftRowMask(firstRow, count);
+        }
+        for (int i = 0; i < m_keys.length; i++) {
+            if (m_keys[i] != null && m_keys[i].m_type == null) {
+                m_keys[i] = null; // the type may be known now
+            } else if (m_keys[i] != null) {
+                m_keys[i].insert(firstRow, count);
+            }
+        }
+        if (m_viewToModel != null) {
+            int[] oldViewToModel = m_viewToModel.clone();
+            insertIntoView(firstRow, endRow);
+            fireRowSorterChanged(oldViewToModel);
+        } else {
+            fireRowSorterChanged(null);
+        }
+    }
+
+    @Override
+    public void rowsDeleted(int firstRow, int endRow) {
+        int count = endRow - firstRow + 1;
+        if (m_rowMask != null) {
+            shiftRowMask(firstRow, -count);
+        }
+        for (ColumnKeys keys : m_keys) {
+            if (keys != null) {
+                keys.delete(firstRow, count);
+            }
+        }
+        if (m_viewToModel != null) {
+            int[] oldViewToModel = m_viewToModel.clone();
+            deleteFromView(firstRow, endRow);
+            fireRowSorterChanged(oldViewToModel);
+        } else {
+            fireRowSorterChanged(null);
+        }
+    }
+
+    @Override
+    public void rowsUpdated(int firstRow, int endRow) {
+        for (ColumnKeys keys : m_keys) {
+            if (keys != null) {
+                for (int row = firstRow; row <= endRow; row++) {
+                    keys.update(row);
+                }
+            }
+        }
+        sort();
+    }
+
+    @Override
+    public void rowsUpdated(int firstRow, int endRow, int column) {
+        rowsUpdated(firstRow, endRow);
+    }
+
+    // Private classes ---------------------------------------------------------
+    /**
+     * The sort keys of all cells in a column.
+     */
+    private class ColumnKeys {
+
+        private final int m_column;
+        private Class m_type;
+        private long[] m_longs; // prices, dates, integers and booleans
+        private double[] m_doubles; // other numbers
+        private CollationKey[] m_strings; // everything else
+        private boolean[] m_missing;
+
+        private ColumnKeys(int column) {
+            m_column = column;
+            int rows = m_model.getRowCount();
+            for (int row = 0; row < rows && m_type == null; row++) {
+                Object value = getValue(row, column);
+                if (value != null && !"".equals(value)) {
+                    m_type = value.getClass();
+                }
+            }
+            boolean isLong = m_type == Money.class || m_type == LocalDate.class || m_type == Long.class
+                    || m_type == Integer.class || m_type == Boolean.class;
+            boolean isDouble = !isLong && m_type != null && Number.class.isAssignableFrom(m_type);
+            m_longs = isLong ? new long[rows] : null;
+            m_doubles = isDouble ? new double[rows] : null;
+            m_strings = !isLong && !isDouble ? new CollationKey[rows] : null;
+            m_missing = new boolean[rows];
+            for (int row = 0; row < rows; row++) {
+                update(row);
+            }
+        }
+
+        /**
+         * Compute the key of a row.
+         *
+         * @param row
+         */
+        private void update(int row) {
+            Object value = getValue(row, m_column);
+            boolean missing = value == null || "".equals(value) || (m_strings == null && value.getClass() != m_type);
+            m_missing[row] = missing;
+            if (missing) {
+                return;
+            }
+            if (m_longs != null) {
+                if (value instanceof Money) {
+                    m_longs[row] = ((Money) value).getUnits();
+                } else if (value instanceof LocalDate) {
+                    m_longs[row] = ((LocalDate) value).toEpochDay();
+                } else if (value instanceof Boolean) {
+                    m_longs[row] = (Boolean) value ? 1 : 0;
+                } else {
+                    m_longs[row] = ((Number) value).longValue();
+                }
+            } else if (m_doubles != null) {
+                m_doubles[row] = ((Number) value).doubleValue();
+            } else {
+                m_strings[row] = m_collator.getCollationKey(value.toString());
+            }
+        }
+
+        /**
+         * Make room for inserted rows and compute their keys.
+         *
+         * @param first
+         * @param count
+         */
+        private void insert(int first, int count) {
+            m_longs = (long[]) insertGap(m_longs, first, count);
+            m_doubles = (double[]) insertGap(m_doubles, first, count);
+            m_strings = (CollationKey[]) insertGap(m_strings, first, count);
+            m_missing = (boolean[]) insertGap(m_missing, first, count);
+            for (int row = first; row < first + count; row++) {
+                update(row);
+            }
+        }
+
+        private void delete(int first, int count) {
+            m_longs = (long[]) removeRange(m_longs, first, count);
+            m_doubles = (double[]) removeRange(m_doubles, first, count);
+            m_strings = (CollationKey[]) removeRange(m_strings, first, count);
+            m_missing = (boolean[]) removeRange(m_missing, first, count);
+        }
+
+        /**
+         * Compare the keys of two rows. Missing keys come last.
+         *
+         * @param a
+         * @param b
+         * @param sign 1 to sort ascending, -1 to sort descending
+         * @return
+         */
+        private int compare(int a, int b, int sign) {
+            if (m_missing[a] || m_missing[b]) {
+                return Boolean.compare(m_missing[a], m_missing[b]);
+            }
+            if (m_longs != null) {
+                return sign * Long.compare(m_longs[a], m_longs[b]);
+            } else if (m_doubles != null) {
+                return sign * Double.compare(m_doubles[a], m_doubles[b]);
+            }
+            return sign * m_strings[a].compareTo(m_strings[b]);
+        }
+    }
+}
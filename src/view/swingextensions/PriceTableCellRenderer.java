@@ -4,6 +4,7 @@ import java.awt.Color;
 import java.awt.Component;
 import javax.swing.JTable;
 import javax.swing.SwingConstants;
+import model.Money;
 import model.Settings;
 
 /**
@@ -34,7 +35,9 @@ public class PriceTableCellRenderer extends PaddingTableCellRenderer {
         if (value == null) {
             value = "";
         }
-        if (value.getClass().equals(Double.class)) {
+        if (value.getClass().equals(Money.class)) {
+            value = model.Settings.GetInstance().convertPriceToString((Money) value);
+        } else if (value.getClass().equals(Double.class)) {
             value = model.Settings.GetInstance().convertPriceToString((double) value);
         } else if (value.getClass().equals(Integer.class)) {
             value = model.Settings.GetInstance().convertPriceToString((double) ((Integer) value));
@@ -45,14 +48,14 @@ public class PriceTableCellRenderer extends PaddingTableCellRenderer {
     @Override
     public Component getTableCellRendererComponent(JTable table, Object value, boolean isSelected, boolean hasFocus, int row, int column) {
         Component cellComponent = super.getTableCellRendererComponent(table, value, isSelected, hasFocus, row, column);
-        if (value != null && value.getClass().equals(Double.class)) {
+        if (value != null && (value.getClass().equals(Money.class) || value.getClass().equals(Double.class))) {
             if (!Settings.GetInstance().getPricesVisible()) {
                 cellComponent.setForeground(Color.white);
             } else {
-                double d = (double) value;
-                if (m_negativeInRed && d < 0.0) {
+                int sign = value.getClass().equals(Money.class) ? ((Money) value).signum() : (int) Math.signum((double) value);
+                if (m_negativeInRed && sign < 0) {
                     cellComponent.setForeground(Color.red);
-                } else if (m_zeroGreyedOut && d == 0.0) {
+                } else if (m_zeroGreyedOut && sign == 0) {
                     cellComponent.setForeground(Color.lightGray);
                 } else {
                     cellComponent.setForeground(Color.black);
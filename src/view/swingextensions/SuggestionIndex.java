@@ -0,0 +1,178 @@
+package view.swingextensions;
+
+import java.util.*;
+
+/**
+ * Index over a fixed set of values to quickly find the values that contain a
+ * typed string, ignoring case. The values are lowercased once and ordered by
+ * how often they are used, most used first. For every character and every pair
+ * of consecutive characters, the index keeps the values that contain it, so a
+ * lookup only has to check the values that share the rarest pair with the
+ * typed string.
+ *
+ * While typing, each string usually extends the previous one. The index
+ * remembers its last result and then only filters that result further.
+ *
+ * @author Anaïs Ools
+ */
+public class SuggestionIndex {
+
+    // Members & constructors --------------------------------------------------
+    private final String[] m_values; // ordered by usage
+    private final String[] m_lowerValues;
+    private final HashMap<Integer, int[]> m_grams;
+    private final int[] m_all;
+
+    private String m_lastFilter;
+    private int[] m_lastResult;
+
+    /**
+     * Create an index where all values are used equally often. The values keep
+     * their order.
+     *
+     * @param values
+     */
+    public SuggestionIndex(String[] values) {
+        this(values, new int[values.length]);
+    }
+
+    /**
+     * Create an index where more used values are suggested first. Values that
+     * are used equally often keep their order.
+     *
+     * @param values
+     * @param usage the number of times each value is used
+     */
+    public SuggestionIndex(String[] values, int[] usage) {
+        Integer[] order = new Integer[values.length];
+        for (int i = 0; i < order.length; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, (a, b) -> Integer.compare(usage[b], usage[a]));
+
+        m_values = new String[values.length];
+        m_lowerValues = new String[values.length];
+        m_all = new int[values.length];
+        for (int i = 0; i < order.length; i++) {
+            m_values[i] = values[order[i]];
+            m_lowerValues[i] = values[order[i]].toLowerCase();
+            m_all[i] = i;
+        }
+
+        // index every character and pair of characters
+        HashMap<Integer, int[]> grams = new HashMap();
+        HashMap<Integer, Integer> sizes = new HashMap();
+        HashSet<Integer> seen = new HashSet();
+        for (int i = 0; i < m_lowerValues.length; i++) {
+            String s = m_lowerValues[i];
+            seen.clear();
+            for (int j = 0; j < s.length(); j++) {
+                seen.add(unigram(s.charAt(j)));
+                if (j + 1 < s.length()) {
+                    seen.add(bigram(s.charAt(j), s.charAt(j + 1)));
+                }
+            }
+            for (Integer gram : seen) {
+                int[] list = grams.get(gram);
+                int size = sizes.getOrDefault(gram, 0);
+                if (list == null) {
+                    list = new int[4];
+                } else if (size == list.length) {
+                    list = Arrays.copyOf(list, size * 2);
+                }
+                list[size] = i;
+                grams.put(gram, list);
+                sizes.put(gram, size + 1);
+            }
+        }
+        m_grams = new HashMap(grams.size() * 2);
+        for (Map.Entry<Integer, int[]> e : grams.entrySet()) {
+            m_grams.put(e.getKey(), Arrays.copyOf(e.getValue(), sizes.get(e.getKey())));
+        }
+    }
+
+    // Private functions -------------------------------------------------------
+    private static int unigram(char c) {
+        return -1 - c;
+    }
+
+    private static int bigram(char c1, char c2) {
+        return (c1 << 16) | c2;
+    }
+
+    /**
+     * Get the smallest list of values that could contain a lowercase filter:
+     * the values that contain the rarest character pair of the filter, or the
+     * previous result if the filter extends the previous filter.
+     *
+     * @param filter
+     * @return
+     */
+    private int[] getCandidates(String filter) {
+        int[] best;
+        if (filter.length() == 1) {
+            best = m_grams.get(unigram(filter.charAt(0)));
+        } else {
+            best = m_all;
+            for (int j = 0; j + 1 < filter.length(); j++) {
+                int[] list = m_grams.get(bigram(filter.charAt(j), filter.charAt(j + 1)));
+                if (list == null) {
+                    return new int[0];
+                }
+                if (list.length < best.length) {
+                    best = list;
+                }
+            }
+        }
+        if (best == null) {
+            return new int[0];
+        }
+        if (m_lastFilter != null && filter.contains(m_lastFilter) && m_lastResult.length < best.length) {
+            best = m_lastResult;
+        }
+        return best;
+    }
+
+    // Public functions --------------------------------------------------------
+    /**
+     * Find the values that contain a string, ignoring case, most used first.
+     *
+     * @param filter
+     * @param max the maximum number of values to return
+     * @return
+     */
+    public String[] find(String filter, int max) {
+        String lower = filter.toLowerCase();
+        int[] result;
+        if (lower.length() == 0) {
+            result = m_all;
+        } else {
+            int[] candidates = getCandidates(lower);
+            result = new int[candidates.length];
+            int size = 0;
+            for (int i : candidates) {
+                if (m_lowerValues[i].contains(lower)) {
+                    result[size++] = i;
+                }
+            }
+            result = Arrays.copyOf(result, size);
+        }
+        m_lastFilter = lower;
+        m_lastResult = result;
+
+        String[] values = new String[Math.min(max, result.length)];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = m_values[result[i]];
+        }
+        return values;
+    }
+
+    /**
+     * Get all values, most used first.
+     *
+     * @return
+     */
+    public String[] getValues() {
+        return m_values.clone();
+    }
+}
@@ -3,20 +3,22 @@ package view.swingextensions;
 import javax.swing.*;
 import java.awt.*;
 import java.awt.event.*;
-import java.util.ArrayList;
 import javax.swing.border.*;
 
 /**
  * This class extends an editable JComboBox. It allows to check for a pattern
  * and add a placeholder. When typing, the user gets a dropdown with the items
- * that contain the current string.
+ * that contain the current string, most used first. The items are looked up in
+ * a SuggestionIndex.
  *
  * @author Anaïs Ools
  */
 public class ValidationComboBox extends JComboBox implements ValidationComponent {
 
     // Members & constructors --------------------------------------------------
-    private final String[] m_values;
+    private static final int MAX_SUGGESTIONS = 30;
+
+    private final SuggestionIndex m_suggestions;
     private JTextField m_textField;
     private String m_placeholder;
     private String m_pattern;
@@ -25,7 +27,7 @@ public class ValidationComboBox extends JComboBox implements ValidationComponent
 
     public ValidationComboBox(String[] values) {
         super(values);
-        m_values = values;
+        m_suggestions = new SuggestionIndex(values);
         this.setEditable(true);
         m_textField = ((JTextField) this.getEditor().getEditorComponent());
         addListeners();
@@ -33,8 +35,21 @@ public class ValidationComboBox extends JComboBox implements ValidationComponent
     }
 
     public ValidationComboBox(boolean canBeEmpty, String placeholder, String pattern, String[] values) {
+        this(canBeEmpty, placeholder, pattern, values, new int[values.length]);
+    }
+
+    /**
+     * Create a combobox that suggests the most used values first.
+     *
+     * @param canBeEmpty
+     * @param placeholder
+     * @param pattern
+     * @param values
+     * @param usage the number of times each value is used
+     */
+    public ValidationComboBox(boolean canBeEmpty, String placeholder, String pattern, String[] values, int[] usage) {
         super(values);
-        m_values = values;
+        m_suggestions = new SuggestionIndex(values, usage);
         this.setEditable(true);
         m_textField = ((JTextField) this.getEditor().getEditorComponent());
         setPlaceholder(placeholder);
@@ -104,12 +119,9 @@ public class ValidationComboBox extends JComboBox implements ValidationComponent
             @Override
             public void keyPressed(KeyEvent ke) {
                 int key = ke.getKeyCode();
-                char keyvalue = ke.getKeyChar();
                 if (key == KeyEvent.VK_ENTER) {
                     m_textField.setText((String) parent.getSelectedItem());
                     parent.hidePopup();
-                } else if (Character.isLetter(keyvalue) || Character.isDigit(keyvalue) || Character.isSpaceChar(keyvalue) || key == KeyEvent.VK_BACK_SPACE || key == KeyEvent.VK_DELETE) {
-                    changed();
                 }
                 validateText();
             }
@@ -151,15 +163,10 @@ public class ValidationComboBox extends JComboBox implements ValidationComponent
      */
     private void showFilteredPopup(String filter) {
         // filter the values
-        String[] newArray = getFilteredList(filter); //{"lalala", "test test"};
+        String[] newArray = m_suggestions.find(filter, MAX_SUGGESTIONS);
 
-        // update the combobox's values
-        DefaultComboBoxModel model = (DefaultComboBoxModel) this.getModel();
-        model.removeAllElements();
-        for (String item : newArray) {
-            model.addElement(item);
-        }
-        this.setModel(model);
+        // update the combobox's values in one go
+        this.setModel(new DefaultComboBoxModel(newArray));
 
         // correct the editor
         m_textField = ((JTextField) this.getEditor().getEditorComponent());
@@ -170,27 +177,6 @@ public class ValidationComboBox extends JComboBox implements ValidationComponent
         this.showPopup();
     }
 
-    /**
-     * Filter a list of strings such that the strings in the result list contain
-     * a certain filter.
-     *
-     * @param filter string that all the result strings should contain
-     * @return
-     */
-    private String[] getFilteredList(String filter) {
-        if (filter.length() == 0) {
-            return m_values;
-        }
-
-        ArrayList<String> list = new ArrayList();
-        for (int a = 0; a < m_values.length; a++) {
-            if (m_values[a].toLowerCase().contains(filter.toLowerCase())) {
-                list.add(m_values[a]);
-            }
-        }
-        return list.toArray(new String[list.size()]);
-    }
-
     /**
      * Check if the selected or typed text is valid, according to the pattern.
      * If no pattern is set, this will always be true.
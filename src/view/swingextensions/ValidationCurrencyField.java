@@ -2,6 +2,7 @@ package view.swingextensions;
 
 import java.awt.event.*;
 import javax.swing.*;
+import model.Money;
 import model.Settings;
 
 /**
@@ -14,11 +15,11 @@ import model.Settings;
 public class ValidationCurrencyField extends JTextField implements ValidationComponent {
 
     // Members & constructors --------------------------------------------------
-    private double m_value;
+    private Money m_value;
 
     public ValidationCurrencyField() {
         addListeners();
-        setValue(0.0);
+        setValue(Money.ZERO);
         setHorizontalAlignment(SwingConstants.RIGHT);
     }
 
@@ -38,8 +39,8 @@ public class ValidationCurrencyField extends JTextField implements ValidationCom
         if (value == null) {
             return;
         }
-        if (value.getClass().equals(Double.class)) {
-            m_value = (double) value;
+        if (value.getClass().equals(Money.class)) {
+            m_value = (Money) value;
             setText(model.Settings.GetInstance().convertPriceToString(m_value));
         }
     }
@@ -57,13 +58,13 @@ public class ValidationCurrencyField extends JTextField implements ValidationCom
         this.addFocusListener(new FocusListener() {
             @Override
             public void focusGained(FocusEvent fe) {
-                parent.setText(String.valueOf(Settings.GetInstance().convertPriceToDouble(parent.getText())));
+                parent.setText(Settings.GetInstance().convertPriceToMoney(parent.getText()).toString());
                 parent.selectAll();
             }
 
             @Override
             public void focusLost(FocusEvent fe) {
-                parent.setValue(Settings.GetInstance().convertPriceToDouble(parent.getText()));
+                parent.setValue(Settings.GetInstance().convertPriceToMoney(parent.getText()));
             }
         });
     }
@@ -2,11 +2,10 @@ package view.swingextensions;
 
 import java.awt.*;
 import java.awt.event.*;
-import java.text.ParseException;
-import java.text.SimpleDateFormat;
-import java.util.Date;
+import java.time.LocalDate;
 import javax.swing.*;
 import javax.swing.border.*;
+import model.EpochDay;
 
 /**
  * This class extends a JTextField such that it only accepts dates in the format
@@ -20,11 +19,9 @@ public class ValidationDateField extends JTextField implements ValidationCompone
     private String m_placeholder;
     private boolean m_canBeEmpty;
     private boolean m_isValid;
-    private SimpleDateFormat m_format;
 
-    public ValidationDateField(boolean canBeEmpty, Date initialValue, String placeholder) {
+    public ValidationDateField(boolean canBeEmpty, LocalDate initialValue, String placeholder) {
         setPlaceholder(placeholder);
-        setFormat(new SimpleDateFormat("dd/MM/yyyy"));
         canBeEmpty(canBeEmpty);
         addListeners();
         setValue(initialValue);
@@ -35,11 +32,6 @@ public class ValidationDateField extends JTextField implements ValidationCompone
         m_placeholder = placeholder;
     }
 
-    public void setFormat(SimpleDateFormat format) {
-        m_format = format;
-        m_format.setLenient(false);
-    }
-
     public void canBeEmpty(boolean allowed) {
         m_canBeEmpty = allowed;
     }
@@ -50,13 +42,9 @@ public class ValidationDateField extends JTextField implements ValidationCompone
     }
 
     @Override
-    public Date getValue() {
+    public LocalDate getValue() {
         if (isValid()) {
-            try {
-                return m_format.parse(getText());
-            } catch (ParseException ex) {
-                return null;
-            }
+            return EpochDay.toLocalDate(EpochDay.parse(getText()));
         }
         return null;
     }
@@ -65,8 +53,8 @@ public class ValidationDateField extends JTextField implements ValidationCompone
     public void setValue(Object value) {
         if (value == null) {
             setText("");
-        } else if (value.getClass().equals(Date.class)) {
-            setText((Date) value);
+        } else if (value.getClass().equals(LocalDate.class)) {
+            setText(EpochDay.of((LocalDate) value));
         }
     }
 
@@ -118,11 +106,11 @@ public class ValidationDateField extends JTextField implements ValidationCompone
         text = correctDate(getText());
 
         // check if the current text is a valid date
-        try {
-            Date d = m_format.parse(text);
-            setText(d);
+        int day = EpochDay.parse(text);
+        if (day != EpochDay.NONE) {
+            setText(day);
             setValid(true);
-        } catch (ParseException ex) {
+        } else {
             setValid(false);
         }
     }
@@ -145,18 +133,19 @@ public class ValidationDateField extends JTextField implements ValidationCompone
 
         // add year if not present
         String[] parts = date.split("/");
+        int currentYear = LocalDate.now().getYear();
         if (parts.length == 2) { // if year not specified, set to current year
-            Date today = new Date();
-            SimpleDateFormat df = new SimpleDateFormat("yyyy");
-            date = parts[0] + "/" + parts[1] + "/" + df.format(today);
+            date = parts[0] + "/" + parts[1] + "/" + currentYear;
         }
         if (parts.length == 3 && parts[2].length() == 2) {
-            SimpleDateFormat df = new SimpleDateFormat("yy");
-            SimpleDateFormat df2 = new SimpleDateFormat("yyyy");
-            try {
-                date = parts[0] + "/" + parts[1] + "/" + df2.format(df.parse(parts[2]));
-            } catch (ParseException ex) {
+            // two-digit year: pick the century that puts the year at most 20 years in the future
+            int year = currentYear / 100 * 100 + Integer.parseInt(parts[2]);
+            if (year > currentYear + 20) {
+                year -= 100;
+            } else if (year <= currentYear - 80) {
+                year += 100;
             }
+            date = parts[0] + "/" + parts[1] + "/" + year;
         }
 
         return date;
@@ -196,10 +185,10 @@ public class ValidationDateField extends JTextField implements ValidationCompone
     /**
      * Set the displayed date.
      *
-     * @param date
+     * @param day the date as an epoch day
      */
-    private void setText(Date date) {
-        setText(m_format.format(date));
+    private void setText(int day) {
+        setText(EpochDay.format(day));
     }
 
     @Override